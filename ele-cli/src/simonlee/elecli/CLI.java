@@ -58,6 +58,29 @@ public class CLI {
                                                             + D3AlgoFactory.D3_WHITELIST + ", "
                                                             + D3AlgoFactory.D3_LIBSCOUT + ".";
 
+        public static final String OPT_CALLGRAPH_ONLY = "cg";
+        public static final String OPTL_CALLGRAPH_ONLY = "callgraph-only";
+        public static final String OPT_CALLGRAPH_ONLY_DESCRIPTION = "build the call graph only, skip the taint analysis";
+
+        public static final String OPT_THREADS = "t";
+        public static final String OPTL_THREADS = "threads";
+        public static final String OPT_THREADS_ARG_NAME = "num";
+        public static final String OPT_THREADS_DESCRIPTION = "number of threads that models are analysed with";
+
+        public static final String OPT_MAX_CHAINS = "mc";
+        public static final String OPTL_MAX_CHAINS = "max-chains";
+        public static final String OPT_MAX_CHAINS_ARG_NAME = "num";
+        public static final String OPT_MAX_CHAINS_DESCRIPTION = "max number of call chains reported per call site of an api";
+
+        public static final String OPT_D3_THREADS = "d3t";
+        public static final String OPTL_D3_THREADS = "d3-threads";
+        public static final String OPT_D3_THREADS_ARG_NAME = "num";
+        public static final String OPT_D3_THREADS_DESCRIPTION = "number of threads that 3rd party libraries are detected with";
+
+        public static final String OPT_D3_VERIFY = "d3v";
+        public static final String OPTL_D3_VERIFY = "d3-verify";
+        public static final String OPT_D3_VERIFY_DESCRIPTION = "check the shortcuts of 3rd party library detection against the full detection, slow";
+
         public static final String OPT_VERBOSE = "V";
         public static final String OPTL_VERBOSE = "verbose";
         public static final String OPT_VERBOSE_DESCRIPTION = "print verbose information";
@@ -86,6 +109,11 @@ public class CLI {
                                 ? ELEGANT.DEFAULT_OPTS.D3_ALGO
                                 // defaults to none
                                 : D3AlgoFactory.D3_WHITELIST;
+        private boolean callGraphOnly = ELEGANT.DEFAULT_OPTS.CALLGRAPH_ONLY; // defaults to run the taint analysis
+        private int threads = ELEGANT.DEFAULT_OPTS.FINDER_THREADS; // defaults to number of processors
+        private int maxChains = ELEGANT.DEFAULT_OPTS.MAX_CALL_CHAINS; // defaults to unlimited
+        private int d3Threads = ELEGANT.DEFAULT_OPTS.D3_THREADS; // defaults to number of processors
+        private boolean d3Verify = ELEGANT.DEFAULT_OPTS.D3_VERIFY; // defaults to no verification
         private boolean verbose = false; // defaults to no verbose
         private PrintStream output = System.out; // defaults to stdout
 
@@ -121,6 +149,46 @@ public class CLI {
             this.d3Algo = d3Algo;
         }
 
+        public boolean isCallGraphOnly() {
+            return callGraphOnly;
+        }
+
+        public void setCallGraphOnly(boolean callGraphOnly) {
+            this.callGraphOnly = callGraphOnly;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getMaxChains() {
+            return maxChains;
+        }
+
+        public void setMaxChains(int maxChains) {
+            this.maxChains = maxChains;
+        }
+
+        public int getD3Threads() {
+            return d3Threads;
+        }
+
+        public void setD3Threads(int d3Threads) {
+            this.d3Threads = d3Threads;
+        }
+
+        public boolean isD3Verify() {
+            return d3Verify;
+        }
+
+        public void setD3Verify(boolean d3Verify) {
+            this.d3Verify = d3Verify;
+        }
+
         public boolean isVerbose() {
             return verbose;
         }
@@ -162,6 +230,11 @@ public class CLI {
                 .withModelsPath(globalParsedOpts.getModels())
                 .withPlatformsPath(globalParsedOpts.getPlatforms())
                 .withD3Algo(globalParsedOpts.d3Algo)
+                .withCallGraphOnly(globalParsedOpts.isCallGraphOnly())
+                .withFinderThreads(globalParsedOpts.getThreads())
+                .withMaxCallChains(globalParsedOpts.getMaxChains())
+                .withD3Threads(globalParsedOpts.getD3Threads())
+                .withD3Verify(globalParsedOpts.isD3Verify())
                 .build();
 
         // watch and report issues
@@ -238,6 +311,44 @@ public class CLI {
                 globalParsedOpts.setD3Algo(cli.getOptionValue(CLI_OPTIONS.OPT_D3_ALGO));
             }
 
+            if (cli.hasOption(CLI_OPTIONS.OPT_CALLGRAPH_ONLY)) {
+                globalParsedOpts.setCallGraphOnly(true);
+            }
+
+            if (cli.hasOption(CLI_OPTIONS.OPT_THREADS)) {
+                String t = cli.getOptionValue(CLI_OPTIONS.OPT_THREADS);
+                try {
+                    globalParsedOpts.setThreads(Integer.parseInt(t));
+                } catch (NumberFormatException e) {
+                    System.err.println("Threads `" + t + "' has to be a number");
+                    stop(1);
+                }
+            }
+
+            if (cli.hasOption(CLI_OPTIONS.OPT_MAX_CHAINS)) {
+                String mc = cli.getOptionValue(CLI_OPTIONS.OPT_MAX_CHAINS);
+                try {
+                    globalParsedOpts.setMaxChains(Integer.parseInt(mc));
+                } catch (NumberFormatException e) {
+                    System.err.println("Max chains `" + mc + "' has to be a number");
+                    stop(1);
+                }
+            }
+
+            if (cli.hasOption(CLI_OPTIONS.OPT_D3_THREADS)) {
+                String dt = cli.getOptionValue(CLI_OPTIONS.OPT_D3_THREADS);
+                try {
+                    globalParsedOpts.setD3Threads(Integer.parseInt(dt));
+                } catch (NumberFormatException e) {
+                    System.err.println("D3 threads `" + dt + "' has to be a number");
+                    stop(1);
+                }
+            }
+
+            if (cli.hasOption(CLI_OPTIONS.OPT_D3_VERIFY)) {
+                globalParsedOpts.setD3Verify(true);
+            }
+
             String[] args = cli.getArgs();
             if (0 == args.length) {
                 System.err.println("<apk> is missed");
@@ -287,6 +398,42 @@ public class CLI {
                 .withDescription(CLI_OPTIONS.OPT_D3_ALGO_DESCRIPTION)
                 .create(CLI_OPTIONS.OPT_D3_ALGO));
 
+        fullOpts.addOption(OptionBuilder
+                .withLongOpt(CLI_OPTIONS.OPTL_CALLGRAPH_ONLY)
+                .withDescription(CLI_OPTIONS.OPT_CALLGRAPH_ONLY_DESCRIPTION)
+                .isRequired(false)
+                .create(CLI_OPTIONS.OPT_CALLGRAPH_ONLY));
+
+        fullOpts.addOption(OptionBuilder
+                .withLongOpt(CLI_OPTIONS.OPTL_THREADS)
+                .hasArg(true)
+                .withArgName(CLI_OPTIONS.OPT_THREADS_ARG_NAME)
+                .withDescription(CLI_OPTIONS.OPT_THREADS_DESCRIPTION)
+                .isRequired(false)
+                .create(CLI_OPTIONS.OPT_THREADS));
+
+        fullOpts.addOption(OptionBuilder
+                .withLongOpt(CLI_OPTIONS.OPTL_MAX_CHAINS)
+                .hasArg(true)
+                .withArgName(CLI_OPTIONS.OPT_MAX_CHAINS_ARG_NAME)
+                .withDescription(CLI_OPTIONS.OPT_MAX_CHAINS_DESCRIPTION)
+                .isRequired(false)
+                .create(CLI_OPTIONS.OPT_MAX_CHAINS));
+
+        fullOpts.addOption(OptionBuilder
+                .withLongOpt(CLI_OPTIONS.OPTL_D3_THREADS)
+                .hasArg(true)
+                .withArgName(CLI_OPTIONS.OPT_D3_THREADS_ARG_NAME)
+                .withDescription(CLI_OPTIONS.OPT_D3_THREADS_DESCRIPTION)
+                .isRequired(false)
+                .create(CLI_OPTIONS.OPT_D3_THREADS));
+
+        fullOpts.addOption(OptionBuilder
+                .withLongOpt(CLI_OPTIONS.OPTL_D3_VERIFY)
+                .withDescription(CLI_OPTIONS.OPT_D3_VERIFY_DESCRIPTION)
+                .isRequired(false)
+                .create(CLI_OPTIONS.OPT_D3_VERIFY));
+
         fullOpts.addOption(OptionBuilder
                 .withLongOpt(CLI_OPTIONS.OPTL_VERBOSE)
                 .withDescription(CLI_OPTIONS.OPT_VERBOSE_DESCRIPTION)
@@ -17,8 +17,13 @@ package de.infsec.tpl;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.ibm.wala.dalvik.util.AndroidAnalysisScope;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
@@ -29,16 +34,20 @@ import com.ibm.wala.ipa.cha.IClassHierarchy;
 import de.infsec.tpl.manifest.ProcessManifest;
 import de.infsec.tpl.hash.Hash;
 import de.infsec.tpl.hash.HashTree;
+import de.infsec.tpl.hash.HashTree.HashAlgorithm;
 import de.infsec.tpl.hash.HashTree.Node;
 import de.infsec.tpl.hash.HashTree.PackageNode;
+import de.infsec.tpl.hash.PackageHashIndex;
 import de.infsec.tpl.pkg.PackageTree;
 import de.infsec.tpl.pkg.PackageUtils;
 import de.infsec.tpl.pkg.PackageUtils.RELATIONSHIP;
 import de.infsec.tpl.profile.AppProfile;
+import de.infsec.tpl.profile.KeyFilter;
 import de.infsec.tpl.profile.LibProfile;
 import de.infsec.tpl.profile.ProfileMatch;
 import de.infsec.tpl.profile.ProfileMatch.HTreeMatch;
 import de.infsec.tpl.profile.ProfileMatch.MatchLevel;
+import de.infsec.tpl.profile.ProfileStore;
 import de.infsec.tpl.stats.AppStats;
 import de.infsec.tpl.utils.*;
 
@@ -46,12 +55,21 @@ import de.infsec.tpl.utils.*;
 public class LibraryIdentifier {
 
     private List<String> androidJarsPathes;
+	private int threads;   // number of threads that app hash trees are generated and profiles are matched with
+	private boolean verifyAdmission = false;   // match profiles rejected by the admission filter anyway
+	private boolean verifyHierarchy = false;   // profile the app with WALA as well if it is profiled from Soot
 
 	private IClassHierarchy cha;
 	private Map<String,String> uniqueLibraries;   // unique library name -> highest version 
 	
 	private AppStats stats;
 
+	// inverted indexes of the app hash trees, built once per app
+	private Map<HashTree, PackageHashIndex> appIndexes = Collections.synchronizedMap(new IdentityHashMap<HashTree, PackageHashIndex>());
+
+	// search steps per lib package that getBestMatch may take, enough to test any 65536 combinations exhaustively
+	public static final long MAX_BEST_MATCH_STEPS = 1L << 20;
+
 	public static Set<String> ambiguousRootPackages = new TreeSet<String>() {
 		private static final long serialVersionUID = 7951760067476257884L;
 	{
@@ -60,8 +78,13 @@ public class LibraryIdentifier {
 	}};
 	
 	public LibraryIdentifier(File appFile, List<String> androidJarsPathes) {
+		this(appFile, androidJarsPathes, 1);
+	}
+
+	public LibraryIdentifier(File appFile, List<String> androidJarsPathes, int threads) {
 		this.stats = new AppStats(appFile);
 		this.androidJarsPathes = androidJarsPathes;
+		this.threads = Math.max(1, threads);
 	}
 
 	private void createClassHierarchy() throws IOException, ClassHierarchyException {
@@ -72,7 +95,7 @@ public class LibraryIdentifier {
 		if (stats.isMultiDex)
             System.out.println("Multi-dex apk detected - Code is merged to single class hierarchy!");
 
-		URI[] uris = (URI[]) androidJarsPathes.stream().map(f -> new File(f).toURI()).toArray();
+		URI[] uris = androidJarsPathes.stream().map(f -> new File(f).toURI()).toArray(URI[]::new);
 
         // create analysis scope and generate class hierarchy
 		// we do not need additional libraries like support libraries,
@@ -83,6 +106,27 @@ public class LibraryIdentifier {
 	}
 
 	public List<String> identifyLibraries(List<LibProfile> profiles) throws NoSuchAlgorithmException, ClassNotFoundException, IOException, ClassHierarchyException {
+		return identifyLibraries(ProfileStore.of(profiles));
+	}
+
+	/**
+	 * Identifies libraries of the app against a {@link ProfileStore}. Profiles are only materialized if they
+	 * share at least one package or class hash with the app, all other profiles cannot match.
+	 * @param store  the {@link ProfileStore}
+	 * @return  the root packages of the identified libraries
+	 */
+	public List<String> identifyLibraries(ProfileStore store) throws NoSuchAlgorithmException, ClassNotFoundException, IOException, ClassHierarchyException {
+		return identifyLibraries(store, null);
+	}
+
+	/**
+	 * Identifies libraries of the app against a {@link ProfileStore}, with the app profile generated from
+	 * the app classes of a Soot scene the apk is already loaded into, i.e. without a WALA class hierarchy.
+	 * @param store  the {@link ProfileStore}
+	 * @param hierarchy  the {@link SootHierarchy} of the app, or null to create a WALA class hierarchy
+	 * @return  the root packages of the identified libraries
+	 */
+	public List<String> identifyLibraries(ProfileStore store, SootHierarchy hierarchy) throws NoSuchAlgorithmException, ClassNotFoundException, IOException, ClassHierarchyException {
 	    long starttime = System.currentTimeMillis();
 
 		// parse AndroidManifest.xml 
@@ -100,49 +144,193 @@ public class LibraryIdentifier {
 				statsSubDir = new File(ptoken.get(0));
 		}
 		
-		stats.profiles = profiles;
-		uniqueLibraries = LibProfile.getUniqueLibraries(profiles);
-
-		// create CHA
-		createClassHierarchy();
-		
-		// generate app package tree and hash trees
-		AppProfile appProfile = AppProfile.create(cha);
+		uniqueLibraries = store.getUniqueLibraries();
+
+		// generate app package tree and hash trees, with every hash algorithm the profiles use
+		Set<HashAlgorithm> algorithms = store.getHashAlgorithms();
+		if (algorithms.isEmpty())
+			algorithms = Collections.singleton(HashAlgorithm.MD5);
+
+		AppProfile appProfile;
+		if (hierarchy != null) {
+			appProfile = AppProfile.create(hierarchy, algorithms, threads);
+
+			// Soot classes are hashed like WALA's, check that both agree on every package of this app
+			if (verifyHierarchy) {
+				createClassHierarchy();
+				stats.hierarchyMismatches = comparePackageHashes(appProfile, AppProfile.create(cha, algorithms, threads));
+				cha = null;
+			}
+		} else {
+			// create CHA
+			createClassHierarchy();
+			appProfile = AppProfile.create(cha, algorithms, threads);
+		}
 		stats.pTree = appProfile.packageTree;
 		stats.appHashTrees = appProfile.hashTrees;
 
+		// index app packages by package and class hashes
+		for (HashTree appHashTree: appProfile.hashTrees)
+			getPackageHashIndex(appHashTree);
+
 		// fast scan (heuristic) - check if lib root package is in app
 		stats.packageMatches = new HashSet<>();
-		for (LibProfile profile: profiles) {
+		for (ProfileStore.Entry entry: store.getEntries()) {
 			// check if library root package is present in app (for validation purposes)
-			String rootPackage = profile.packageTree.getRootPackage();
+			String rootPackage = entry.rootPackage;
 			
 			// In some edge case the automatic root package extraction gives us a generic package that could match multiple different libraries.
 			// In these cases it is better to ignore them instead of getting a lot of false matches
 			if (rootPackage == null || ambiguousRootPackages.contains(rootPackage)) continue;
 			
 			boolean match = appProfile.packageTree.containsPackage(rootPackage);
-			if (match) { stats.packageMatches.add(profile.description.name); }
+			if (match) { stats.packageMatches.add(entry.name); }
 		}
 		
-		// check app against all loaded profiles (exact + partial matching)
+		// check app against all profiles that can possibly match (exact + partial matching)
+		// profiles are matched independently on a pool of threads, and merged in the order of the store
+		final KeyFilter appFilter = new KeyFilter(ProfileStore.keysOf(appProfile.hashTrees));
+		final AtomicInteger rejectedProfiles = new AtomicInteger();
+		final AtomicInteger admissionMisses = new AtomicInteger();
+		List<Future<ProfileMatch>> futures = new ArrayList<Future<ProfileMatch>>(store.size());
+		List<LibProfile> profiles = new ArrayList<LibProfile>();
 		List<ProfileMatch> results = new ArrayList<ProfileMatch>();
 
-		for (LibProfile profile: profiles) {
-			// check if this is the most current library version
-			profile.setIsDeprecatedLib(!uniqueLibraries.get(profile.description.name).equals(profile.description.version));
-			
-			// compute similarity scores for each hash tree
-			ProfileMatch pm = partialMatchForTrees(cha, appProfile, profile, MatchLevel.CLASS);
-			results.add(pm);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (final ProfileStore.Entry entry: store.getEntries()) {
+				futures.add(pool.submit(() -> {
+					// profiles without any common package or class hash neither match fully nor partially
+					if (!entry.mayMatch(appFilter)) {
+						rejectedProfiles.incrementAndGet();
+
+						// match rejected profiles anyway to check that no match was lost
+						if (verifyAdmission) {
+							ProfileMatch pm = matchProfile(entry, appProfile);
+							if (pm.isMatch() || pm.isPartialMatch()) admissionMisses.incrementAndGet();
+						}
+						return null;
+					}
+
+					return matchProfile(entry, appProfile);
+				}));
+			}
+
+			for (Future<ProfileMatch> future: futures) {
+				ProfileMatch pm = future.get();
+				if (pm != null) {
+					profiles.add(pm.lib);
+					results.add(pm);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while matching library profiles", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof NoSuchAlgorithmException) throw (NoSuchAlgorithmException) cause;
+			if (cause instanceof ClassNotFoundException) throw (ClassNotFoundException) cause;
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		} finally {
+			pool.shutdownNow();
 		}
 
+		stats.profiles = profiles;
 		stats.pMatches = results;
+		stats.rejectedProfiles = rejectedProfiles.get();
+		stats.admissionMisses = verifyAdmission? admissionMisses.get() : -1;
         stats.processingTime = System.currentTimeMillis() - starttime;
 
         return collectResults(results);
 	}
 
+	private ProfileMatch matchProfile(ProfileStore.Entry entry, AppProfile appProfile) throws NoSuchAlgorithmException, ClassNotFoundException, IOException {
+		LibProfile profile = entry.load();
+
+		// check if this is the most current library version
+		profile.setIsDeprecatedLib(!uniqueLibraries.get(profile.description.name).equals(profile.description.version));
+
+		// compute similarity scores for each hash tree
+		return partialMatchForTrees(cha, appProfile, profile, MatchLevel.CLASS);
+	}
+
+	/**
+	 * @return the statistics of the last identification, e.g. how many profiles were rejected before matching
+	 */
+	public AppStats getAppStats() {
+		return stats;
+	}
+
+	/**
+	 * @param verifyAdmission  if true, profiles rejected before matching are matched anyway, and the number of
+	 *        rejected profiles that match fully or partially is reported in {@link AppStats#admissionMisses}
+	 */
+	public void setVerifyAdmission(boolean verifyAdmission) {
+		this.verifyAdmission = verifyAdmission;
+	}
+
+	/**
+	 * @param verifyHierarchy  if true, an app profiled from a {@link SootHierarchy} is profiled from a WALA class
+	 *        hierarchy as well, and the number of packages hashed differently is reported in {@link AppStats#hierarchyMismatches}
+	 */
+	public void setVerifyHierarchy(boolean verifyHierarchy) {
+		this.verifyHierarchy = verifyHierarchy;
+	}
+
+	/**
+	 * Compares the package hashes of two profiles of the same app, e.g. generated from Soot and from WALA.
+	 * Packages that are missing in either profile or hashed differently are printed.
+	 * @param profile  the {@link AppProfile} to check
+	 * @param reference  the {@link AppProfile} to check against
+	 * @return  the number of mismatching packages over all hash trees
+	 */
+	public static int comparePackageHashes(AppProfile profile, AppProfile reference) {
+		int mismatches = 0;
+
+		if (!profile.packageTree.equals(reference.packageTree))
+			System.err.println("Package trees differ: " + profile.packageTree.getAllPackages().size() + " vs " + reference.packageTree.getAllPackages().size() + " packages");
+
+		for (HashTree refHashTree: reference.hashTrees) {
+			HashTree hashTree = HashTree.getTreeByConfig(profile.hashTrees, refHashTree.getConfig());
+			if (hashTree == null) {
+				System.err.println("Could not find hash tree for config: " + refHashTree.getConfig());
+				mismatches += refHashTree.getNumberOfPackages();
+				continue;
+			}
+
+			Map<String, ByteBuffer> packageHashes = new HashMap<String, ByteBuffer>();
+			for (Node pn: hashTree.getPackageNodes())
+				packageHashes.put(((PackageNode) pn).packageName, ByteBuffer.wrap(pn.hash));
+
+			for (Node pn: refHashTree.getPackageNodes()) {
+				String packageName = ((PackageNode) pn).packageName;
+				ByteBuffer hash = packageHashes.remove(packageName);
+				if (!ByteBuffer.wrap(pn.hash).equals(hash)) {
+					System.err.println("Package hashes differ for " + packageName + " (" + refHashTree.getConfig() + ")");
+					mismatches++;
+				}
+			}
+
+			for (String packageName: packageHashes.keySet()) {
+				System.err.println("Package hashes differ for " + packageName + " (" + refHashTree.getConfig() + ")");
+				mismatches++;
+			}
+		}
+
+		return mismatches;
+	}
+
+	/**
+	 * @return the {@link ProfileMatch} of every library profile matched by the last identification, null before.
+	 *         Profiles rejected before matching, see {@link AppStats#rejectedProfiles}, have no full and no partial
+	 *         match, and are not included
+	 */
+	public List<ProfileMatch> getProfileMatches() {
+		return stats.pMatches;
+	}
+
 	/**
 	 * Compute similarity scores for all provided {@link HashTree}. 
 	 * @param cha the {@link IClassHierarchy}
@@ -159,8 +347,16 @@ public class LibraryIdentifier {
 		String rootPackage = libProfile.packageTree.getRootPackage();
 		pMatch.libRootPackagePresent = rootPackage == null? false : appProfile.packageTree.containsPackage(rootPackage);
 
+		// profiles generated with a different hash algorithm have no tree to match against, skip them silently
+		Set<HashAlgorithm> libAlgorithms = EnumSet.noneOf(HashAlgorithm.class);
+		for (HashTree libHashTree: libProfile.hashTrees)
+			libAlgorithms.add(libHashTree.getConfig().hashAlgorithm);
+
 		// calculate scores for each hash tree
 		for (HashTree appHashTree: appProfile.hashTrees) {
+			if (!libAlgorithms.contains(appHashTree.getConfig().hashAlgorithm))
+				continue;
+
 			partialMatch(cha, pMatch, appHashTree, appProfile.packageTree, libProfile, lvl);
 		}
 
@@ -191,15 +387,24 @@ public class LibraryIdentifier {
 			return;
 		}
 
+		PackageHashIndex appIndex = getPackageHashIndex(appHashTree);
+
 		/*
 		 *  step 0. shortcut - check if library fully matches by comparing the package hashes
 		 */
-		if (appHashTree.getPackageNodes().containsAll(libHashTree.getPackageNodes())) {
+		if (appIndex.containsAllPackages(libHashTree.getPackageNodes())) {
 			// update results
 			match.simScore = ProfileMatch.MATCH_HTREE_FULL;
 			
-			List<Node> matchingNodes = new ArrayList<Node>(appHashTree.getPackageNodes());
-			matchingNodes.retainAll(libHashTree.getPackageNodes());
+			Set<ByteBuffer> libPackageHashes = new HashSet<ByteBuffer>();
+			for (Node lp: libHashTree.getPackageNodes())
+				libPackageHashes.add(ByteBuffer.wrap(lp.hash));
+
+			List<Node> matchingNodes = new ArrayList<Node>();
+			for (Node ap: appHashTree.getPackageNodes()) {
+				if (libPackageHashes.contains(ByteBuffer.wrap(ap.hash)))
+					matchingNodes.add(ap);
+			}
 			match.matchingNodes = HashTree.toPackageNode(matchingNodes);
 			
 			pMatch.addResult(match);
@@ -221,20 +426,47 @@ public class LibraryIdentifier {
 		 *    lp1 ∶ ap1 (0.95), ap2 (0.84), ap3 (0.75)
 		 *    lp3 ∶ ap6 (0.91), ap4 (0.60)
 		 *    lp2 ∶ ap7 (0.85), ap9 (0.82)
+		 *
+		 *  Only app packages sharing the package hash or at least one class hash with lp can score above zero,
+		 *  they are looked up in the app index and scored by counting shared class hashes (see calcNodeSimScore)
 		 */
 		long time = System.currentTimeMillis();
 		HashMap<Node, List<Pair<Node, Float>>> candidateList = new HashMap<Node, List<Pair<Node, Float>>>();
+		int[] sharedClasses = new int[appIndex.size()];   // number of lp classes contained per app package
+		boolean[] samePackage = new boolean[appIndex.size()];
+		boolean[] touched = new boolean[appIndex.size()];
+		int[] touchedPackages = new int[appIndex.size()];
 		for (Node lp: libHashTree.getPackageNodes()) {
 			ArrayList<Pair<Node, Float>> clist = new ArrayList<Pair<Node, Float>>();  // candidate list for lp
 
-			for (Node ap: appHashTree.getPackageNodes()) {
+			int numberOfTouched = 0;
+			for (int ap: appIndex.getPackagesByHash(lp.hash)) {
+				if (!touched[ap]) { touched[ap] = true; touchedPackages[numberOfTouched++] = ap; }
+				samePackage[ap] = true;
+			}
+			for (Node lc: lp.childs) {
+				for (int ap: appIndex.getPackagesByClassHash(lc.hash)) {
+					if (!touched[ap]) { touched[ap] = true; touchedPackages[numberOfTouched++] = ap; }
+					sharedClasses[ap]++;
+				}
+			}
+
+			// visit app packages in the order of the app hash tree, so that equal scores keep their order
+			Arrays.sort(touchedPackages, 0, numberOfTouched);
+			for (int i = 0; i < numberOfTouched; i++) {
+				int pos = touchedPackages[i];
+				Node ap = appIndex.getPackageNode(pos);
+				float score = samePackage[pos]? 1f : (float) sharedClasses[pos] / (float) lp.numberOfChilds();
+
+				touched[pos] = false;
+				samePackage[pos] = false;
+				sharedClasses[pos] = 0;
+
 				// filter application packages that start with declared manifest app package name
 				// TODO: unfortunately most app packages do only partially match the manifest package name. This means to match more app packages
 				//       we would have to test partially (but: this could lead to false positives if we have libs from the same developer)
 				if (((PackageNode) ap).packageName.startsWith(stats.manifest.getPackageName()))
 					continue;
-				
-				float score = calcNodeSimScore(lp, ap);
 			
 				if (score > ProfileMatch.MIN_CLAZZ_SCORE) {
 					// update candidate list
@@ -319,6 +551,10 @@ public class LibraryIdentifier {
 		}
 	}
 
+	private PackageHashIndex getPackageHashIndex(HashTree appHashTree) {
+		return appIndexes.computeIfAbsent(appHashTree, PackageHashIndex::new);
+	}
+
     // TODO: cumbersome
 	private static List<RELATIONSHIP> computePackageRelationships(TreeSet<Map.Entry<Node, List<Pair<Node, Float>>>> candidateList) {
 		// retrieve ordered list of library packages from the current candidate list
@@ -374,99 +610,101 @@ public class LibraryIdentifier {
 	/**
 	 * Given a candidate list of app packages for every lib package, compute the optimal solution
 	 * while preserving the package relationship.
+	 *
+	 * Combinations are searched depth-first in the same order as a full enumeration would test them, and a
+	 * prefix is cut off as soon as either the relationship of two consecutive packages does not hold, or the
+	 * prefix plus the best candidate of every remaining lib package cannot beat the current highscore. As the
+	 * candidate lists are sorted by simScore, a cut-off prefix also cuts off all following candidates at the
+	 * same position. The search returns the same optimum (the first best combination) as the full enumeration,
+	 * and is bounded by {@link #MAX_BEST_MATCH_STEPS} per lib package, returning the best solution found so far.
 	 * @param cList ordered candidate list
 	 * @param libPackageRel  pre-computed relationship between two consecutive library packages
 	 * @return  the optimal solution as similarity score and corresponding list of packages
 	 */
 	public static Pair<Float, List<Pair<Node, Float>>> getBestMatch(final ArrayList<List<Pair<Node, Float>>> cList, final List<RELATIONSHIP> libPackageRel) {
-	    // keep track of the size of candidate arrays for each lib
 		// Example cList: 
 		//    lp1 ∶ ap1 (0.95), ap2 (0.84), ap3 (0.75)
 		//    lp3 ∶ ap6 (0.91), ap4 (0.60)
 		//    lp2 ∶ ap7 (0.85), ap9 (0.82)
-		// => size array [3,2,2]
-	    int sizeArray[] = new int[cList.size()];
-
-	    // keep track of the index of each inner String array which will be used
-	    // to make the next combination (access pattern)
-	    int counterArray[] = new int[cList.size()];
-
-	    // Discover the size of each inner array and populate sizeArray.
-	    // Calculate the total number of combinations possible, here: 3*2*2 = 12
-	    int totalCombinationCount = 1;
-	    for(int i = 0; i < cList.size(); ++i) {
-	        sizeArray[i] = cList.get(i).size();
-	        totalCombinationCount *= cList.get(i).isEmpty()? 1 : cList.get(i).size();  // tolerate empty candidate list
-	    }
-
-	    // stop if we have too much combinations
-		if (totalCombinationCount > 65536) {
+		final int n = cList.size();
+		if (n == 0)
 			return null;
-		}
-	    
-	    // only consider solutions that are better than the min matching score
+
+		// maxRemaining[i] is the sum of the best candidate scores of lib packages i..n-1 (empty candidate lists score 0)
+		double[] maxRemaining = new double[n+1];
+		for (int i = n-1; i >= 0; i--)
+			maxRemaining[i] = maxRemaining[i+1] + (cList.get(i).isEmpty()? 0f : cList.get(i).get(0).second());
+
+		// scores are summed up as floats, allow for their rounding errors when bounding
+		final double roundingSlack = 1d + (n + 2) * Math.ulp(1f);
+
+		// only consider solutions that are better than the min matching score
 		float highScore = ProfileMatch.MIN_PARTIAL_MATCHING_SCORE;
-		List<Pair<Node, Float>> bestMatch = null;
-		
-		// test all combinations
-		List<Pair<Node, Float>> curSolution = null;
-	    for (int countdown = totalCombinationCount; countdown > 0; --countdown) {
+		int[] bestCombination = null;
+
+		int[] counterArray = new int[n];     // candidate index per lib package, -1 if not yet chosen
+		float[] prefixScore = new float[n+1]; // prefixScore[i] is the sum of the scores chosen for lib packages 0..i-1
+		long steps = 0;
+		final long maxSteps = MAX_BEST_MATCH_STEPS * n;
+
+		int level = 0;
+		counterArray[0] = -1;
+		while (level >= 0 && steps++ < maxSteps) {
+			List<Pair<Node,Float>> candidates = cList.get(level);
+
+			// take the next candidate at this level, or go back to the previous level
+			counterArray[level]++;
+			if (counterArray[level] >= Math.max(1, candidates.size())) {   // tolerate empty candidate list
+				level--;
+				continue;
+			}
 
-	    	// calculate sim score for current combination (set in counterArray)
-	    	float simScore = 0f;	    	
-	        for(int i = 0; i < cList.size(); ++i) {
-	        	List<Pair<Node,Float>> candidates = cList.get(i);
-	        	simScore += candidates.isEmpty()? 0f : candidates.get(counterArray[i]).second();
-	        }
+			float score = candidates.isEmpty()? 0f : candidates.get(counterArray[level]).second();
+			prefixScore[level+1] = prefixScore[level] + score;
 
-			simScore = simScore / (float) cList.size();
+			// bound - following candidates at this level score at most the same, skip them all
+			if ((prefixScore[level+1] + maxRemaining[level+1]) * roundingSlack / n <= highScore) {
+				level--;
+				continue;
+			}
 
-			// if we have a new highscore, perform structural matching (package relationships) to
-			// verify correctness of the solution
+			// structural matching (package relationships) with the previous lib package
+			if (level > 0 && !candidates.isEmpty() && !cList.get(level-1).isEmpty()) {
+				RELATIONSHIP candidateRel = PackageUtils.testRelationship(((PackageNode) cList.get(level-1).get(counterArray[level-1]).first()).packageName,
+																		  ((PackageNode) candidates.get(counterArray[level]).first()).packageName);
+				if (!libPackageRel.get(level-1).equals(candidateRel))
+					continue;
+			}
+
+			if (level < n-1) {
+				counterArray[++level] = -1;
+				continue;
+			}
+
+			// complete combination, only a new highscore replaces an earlier solution
+			float simScore = prefixScore[n] / (float) n;
 			if (simScore > highScore) {
-				curSolution = new ArrayList<Pair<Node, Float>>();
-				
-		        for (int i = 0; i < cList.size()-1; i++) {
-		        	if (cList.get(i).isEmpty() || cList.get(i+1).isEmpty())  // tolerate empty candidates
-		        		continue;
-		        	
-		        	RELATIONSHIP candidateRel = PackageUtils.testRelationship(((PackageNode) cList.get(i).get(counterArray[i]).first()).packageName,
-		        															  ((PackageNode) cList.get(i+1).get(counterArray[i+1]).first()).packageName);
-		        	if (!libPackageRel.get(i).equals(candidateRel)) {
-		        		curSolution = null;
-		        		break;
-		        	} else {		        	
-		        		curSolution.add(cList.get(i).get(counterArray[i]));
-		        	}
-		        }
-		        
-		        if (curSolution != null) {
-		        	highScore = simScore;
-		        	bestMatch = new ArrayList<Pair<Node, Float>>(curSolution);
-		        	if (!cList.get(cList.size()-1).isEmpty())
-		        		bestMatch.add(cList.get(cList.size()-1).get(counterArray[cList.size()-1]));  // add last element (if existing)
-		        }
-		        
+				highScore = simScore;
+				bestCombination = counterArray.clone();
 			}
+		}
+
+		if (bestCombination == null)
+			return null;
 
-			// Increment the counterArray so that the next combination is taken on the next iteration of this loop.
-	        for (int incIndex = cList.size()-1; incIndex >= 0; --incIndex) {
-	            if (counterArray[incIndex] + 1 < sizeArray[incIndex]) {
-	                ++counterArray[incIndex];
-	                // None of the indices of higher significance need to be
-	                // incremented, so jump out of this for loop at this point.
-	                break;
-	            }
-	            // The index at this position is at its max value, so zero it
-	            // and continue this loop to increment the index which is more
-	            // significant than this one.
-	            counterArray[incIndex] = 0;
-	        }
-	    }
-
-	    return bestMatch == null? null : new Pair<Float, List<Pair<Node, Float>>>(highScore, bestMatch);
+		// packages are only listed if they have a relationship with the next lib package, plus the last one
+		List<Pair<Node, Float>> bestMatch = new ArrayList<Pair<Node, Float>>();
+		for (int i = 0; i < n-1; i++) {
+			if (cList.get(i).isEmpty() || cList.get(i+1).isEmpty())  // tolerate empty candidates
+				continue;
+			bestMatch.add(cList.get(i).get(bestCombination[i]));
+		}
+		if (!cList.get(n-1).isEmpty())
+			bestMatch.add(cList.get(n-1).get(bestCombination[n-1]));  // add last element (if existing)
+
+		return new Pair<Float, List<Pair<Node, Float>>>(highScore, bestMatch);
 	}
-	
+
 	// Filter candidates by lib root package
 	private static Set<String> getPartitionsByRootPackage(Collection<String> partitions, String libRootPackage) {
 		if (partitions.isEmpty() || partitions.size() == 1 || libRootPackage == null) 
@@ -525,11 +763,23 @@ public class LibraryIdentifier {
 	public List<String> collectResults(final List<ProfileMatch> results) {
 	    List<String> prefixes = new ArrayList<>();
 
+		// group results by library name in a single pass, results keep their order within a group
+		// the results list is only read, hence this is safe for the merged output of the parallel matcher
+		Map<String, List<ProfileMatch>> resultsByLib = new HashMap<>();
+		for (ProfileMatch pm: results) {
+			List<ProfileMatch> libResults = resultsByLib.get(pm.lib.description.name);
+			if (libResults == null) {
+				libResults = new ArrayList<>();
+				resultsByLib.put(pm.lib.description.name, libResults);
+			}
+			libResults.add(pm);
+		}
+
 	    // Step1: print libs for which all configs match
 		Set<String> exactMatches = new TreeSet<>();
 		for (String libName: uniqueLibraries.keySet()) {
-			for (ProfileMatch pm: results) {
-				if (pm.lib.description.name.equals(libName) && pm.doAllConfigsMatch()) {
+			for (ProfileMatch pm: getResults(resultsByLib, libName)) {
+				if (pm.doAllConfigsMatch()) {
 					exactMatches.add(pm.lib.packageTree.getRootPackage());
 				}
 			}
@@ -542,8 +792,8 @@ public class LibraryIdentifier {
 			
 			// if the same lib matches in different versions and different number of exact matches, show only the best matches
 			List<ProfileMatch> bestMatches = new ArrayList<ProfileMatch>();
-			for (ProfileMatch pm: results) {
-				if (pm.lib.description.name.equals(libName) && pm.isMatch()) {
+			for (ProfileMatch pm: getResults(resultsByLib, libName)) {
+				if (pm.isMatch()) {
 					if (bestMatches.isEmpty() || bestMatches.get(0).getMatchedConfigs().size() == pm.getMatchedConfigs().size())
 						bestMatches.add(pm);
 					else if (bestMatches.get(0).getMatchedConfigs().size() < pm.getMatchedConfigs().size()) {
@@ -569,13 +819,12 @@ public class LibraryIdentifier {
                 List<ProfileMatch> pMatches = new ArrayList<>();
                 float highScore = ProfileMatch.MATCH_HTREE_NONE;
 
-                for (ProfileMatch pm: results) {
-                    if (pm.lib.description.name.equals(lib)) {
-                        if (pm.getHighestSimScore().simScore >= highScore && pm.getHighestSimScore().simScore > ProfileMatch.MATCH_HTREE_NONE) {
-                            pMatches = new ArrayList<>();
-                            pMatches.add(pm);
-                            highScore = pm.getHighestSimScore().simScore;
-                        }
+                for (ProfileMatch pm: getResults(resultsByLib, lib)) {
+                    float simScore = pm.getHighestSimScore().simScore;
+                    if (simScore >= highScore && simScore > ProfileMatch.MATCH_HTREE_NONE) {
+                        pMatches = new ArrayList<>();
+                        pMatches.add(pm);
+                        highScore = simScore;
                     }
                 }
 
@@ -591,6 +840,11 @@ public class LibraryIdentifier {
         return prefixes;
 	}
 
+	private static List<ProfileMatch> getResults(Map<String, List<ProfileMatch>> resultsByLib, String libName) {
+		List<ProfileMatch> libResults = resultsByLib.get(libName);
+		return libResults == null? Collections.<ProfileMatch>emptyList() : libResults;
+	}
+
 	private ProcessManifest parseManifest(File appFile) {
 		ProcessManifest pm = new ProcessManifest();
 		pm.loadManifestFile(appFile.getAbsolutePath());
@@ -20,6 +20,8 @@ import java.util.List;
 
 import com.ibm.wala.classLoader.IMethod;
 
+import soot.SootMethod;
+
 import de.infsec.tpl.utils.Utils;
 
 public enum AccessFlags {
@@ -142,5 +144,23 @@ public enum AccessFlags {
 
 		return res;
 	}
+
+	public static int getMethodAccessCode(SootMethod m) {
+		int res = 0x0;
+
+		if (m == null)
+		    return res;
+
+		if (m.isPublic()) {
+			res |= AccessFlags.PUBLIC.getValue();
+		} else if (m.isProtected()) {
+			res |= AccessFlags.PROTECTED.getValue();
+		} else if (m.isPrivate()) {
+			res |= AccessFlags.PRIVATE.getValue();
+		} else {
+			res |= AccessFlags.PACKAGE_PROTECTED.getValue();
+		}
+
+		return res;
+	}
 }
-    
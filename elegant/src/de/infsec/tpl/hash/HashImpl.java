@@ -46,4 +46,11 @@ public class HashImpl extends Hash {
 		digest.update(b);
 		return digest.digest();
 	}
+
+	@Override
+	public byte[] hash(Iterable<byte[]> chunks) {
+		for (byte[] b: chunks)
+			digest.update(b);
+		return digest.digest();
+	}
 }
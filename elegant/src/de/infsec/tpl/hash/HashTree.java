@@ -15,19 +15,21 @@
 package de.infsec.tpl.hash;
 
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.Serializable;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import com.ibm.wala.classLoader.IClass;
@@ -35,14 +37,20 @@ import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.Descriptor;
+import com.ibm.wala.types.TypeReference;
 
 import de.infsec.tpl.hash.Hash.ByteArrayComparator;
 import de.infsec.tpl.pkg.PackageTree;
 import de.infsec.tpl.pkg.PackageUtils;
 import de.infsec.tpl.profile.ProfileMatch.MatchLevel;
+import de.infsec.tpl.utils.SootHierarchy;
 import de.infsec.tpl.utils.Utils;
 import de.infsec.tpl.utils.WalaUtils;
 
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+
 
 /**
  * The main data structure for (library/app) profiles
@@ -202,7 +210,7 @@ public class HashTree implements Serializable {
 		private ByteArrayComparator comp;
 		
 		public NodeComparator() throws NoSuchAlgorithmException {
-			IHash hashFunc = new HashImpl(config.hashAlgorithm.toString());
+			IHash hashFunc = config.hashAlgorithm.newHashFunction();
 			comp = ((Hash) hashFunc).new ByteArrayComparator();
 		}
 		
@@ -300,8 +308,14 @@ public class HashTree implements Serializable {
 	
 	
 	
+	/**
+	 * Hash algorithms of hash trees. Library profiles are generated outside of ELEGANT, by LibScout's library
+	 * profiler, which still generates {@link #MD5} trees only. ELEGANT reads profiles of any of these algorithms
+	 * and generates the app hash trees with every algorithm the loaded profiles use.
+	 */
 	public enum HashAlgorithm {
-		MD5("MD5"), SHA1("SHA-1"), SHA256("SHA-256");
+		MD5("MD5"), SHA1("SHA-1"), SHA256("SHA-256"),
+		MURMUR3_128("MurmurHash3-128");   // fast, non-cryptographic
 		
 		private String value;
 		
@@ -309,6 +323,15 @@ public class HashTree implements Serializable {
 			this.value = value;
 		}
 		
+		/**
+		 * Creates a new hash function for this algorithm, hash functions are not thread-safe
+		 * @return an {@link IHash} instance
+		 * @throws NoSuchAlgorithmException
+		 */
+		public IHash newHashFunction() throws NoSuchAlgorithmException {
+			return this == MURMUR3_128? new Murmur3Hash() : new HashImpl(this.value);
+		}
+
 		@Override
 		public String toString() {
 			return this.value;
@@ -467,24 +490,34 @@ public class HashTree implements Serializable {
 	 * @throws NoSuchAlgorithmException
 	 */
 	public void generate(IClassHierarchy cha) throws NoSuchAlgorithmException {
-		IHash hashFunc = new HashImpl(config.hashAlgorithm.toString());
-		NodeComparator comp = new NodeComparator();
-		
-		int classHashCount = 0;
-		int methodHashCount = 0;
-	
-		// create map package name -> list of clazzNodes
-		HashMap<String, Collection<ClassNode>> packageMap = new HashMap<String, Collection<ClassNode>>();
-		
+		generate(cha, 1);
+	}
+
+	/**
+	 * Generates a HashTree for every class loaded via application classLoader, with class nodes being
+	 * hashed on a pool of threads. The result is identical to the sequential generation.
+	 * @param cha  the {@link IClassHierarchy} instance
+	 * @param threads  the number of threads, 1 for sequential generation
+	 * @throws NoSuchAlgorithmException
+	 */
+	public void generate(IClassHierarchy cha, int threads) throws NoSuchAlgorithmException {
+		// collect app classes in iteration order, which determines the order of equal class hashes
+		List<IClass> classes = new ArrayList<IClass>();
 		for (Iterator<IClass> it = cha.iterator(); it.hasNext(); ) {
 			IClass clazz = it.next();
 
-			if (WalaUtils.isAppClass(clazz)){
+			if (WalaUtils.isAppClass(clazz)) {
 				// inner class filter
 				if (config.filterInnerClasses && WalaUtils.isInnerClass(clazz)) {
 					continue;
 				}
+				classes.add(clazz);
+			}
+		}
 
+		generate(classes, new ClassNodeGenerator<IClass>() {
+			@Override
+			public ClassNode generate(IClass clazz, IHash hashFunc, NodeComparator comp) {
 				// duplicate method filter
 				Collection<MethodNode> methodNodes = config.filterDups? new TreeSet<MethodNode>(comp) : new ArrayList<MethodNode>();
 				
@@ -508,42 +541,136 @@ public class HashTree implements Serializable {
 					methodNodes.add(new MethodNode(hash, m.getSignature()));
 				}
 
-				// normalization (if we have no methods, either because there are none or due to our filter properties, skip this class)
-				if (methodNodes.isEmpty()) {
+				return generateClassNode(methodNodes, WalaUtils.simpleName(clazz), hashFunc, comp);
+			}
+
+			@Override
+			public String getPackageName(IClass clazz) {
+				return PackageUtils.getPackageName(clazz);
+			}
+		}, threads);
+	}
+
+	/**
+	 * Generates a HashTree for every app class of a Soot scene, with class nodes being hashed on a pool
+	 * of threads. The result is identical to the generation from a WALA class hierarchy of the same app.
+	 * @param hierarchy  the {@link SootHierarchy} of the app
+	 * @param threads  the number of threads, 1 for sequential generation
+	 * @throws NoSuchAlgorithmException
+	 */
+	public void generate(final SootHierarchy hierarchy, int threads) throws NoSuchAlgorithmException {
+		List<SootClass> classes = new ArrayList<SootClass>();
+		for (SootClass clazz: hierarchy.getAppClasses()) {
+			if (hierarchy.isAppClass(clazz)) {
+				// inner class filter
+				if (config.filterInnerClasses && SootHierarchy.isInnerClass(clazz)) {
 					continue;
 				}
-				
-				if (!config.filterDups) 
-					Collections.sort((List<MethodNode>) methodNodes, comp);  // sort but do not filter dups
+				classes.add(clazz);
+			}
+		}
 
-				methodHashCount += methodNodes.size();
-				classHashCount++;
-				
-				byte[] clazzHash = hash(methodNodes, hashFunc);
-				String classIdentifier = config.buildVerboseness == HTREE_BUILD_VERBOSENESS.DEBUG || config.buildVerboseness == HTREE_BUILD_VERBOSENESS.TRACE? WalaUtils.simpleName(clazz) : "";
-				ClassNode clazzNode = new ClassNode(clazzHash, classIdentifier);
-				
-				// only store method hashes if configured (space vs accuracy)
-				clazzNode.childs = config.buildVerboseness == HTREE_BUILD_VERBOSENESS.TRACE? new ArrayList<Node>(methodNodes) : new ArrayList<Node>();
-		
-				String pckgName = PackageUtils.getPackageName(clazz);
-				if (!packageMap.containsKey(pckgName)) {
-					packageMap.put(pckgName, config.filterDups? new TreeSet<ClassNode>(comp) : new ArrayList<ClassNode>());
+		generate(classes, new ClassNodeGenerator<SootClass>() {
+			@Override
+			public ClassNode generate(SootClass clazz, IHash hashFunc, NodeComparator comp) {
+				// duplicate method filter
+				Collection<MethodNode> methodNodes = config.filterDups? new TreeSet<MethodNode>(comp) : new ArrayList<MethodNode>();
+
+				for (SootMethod m: clazz.getMethods()) {
+					// filter methods by access flag
+					if (config.accessFlagsFilter != AccessFlags.NO_FLAG.getValue()) {
+						int code = AccessFlags.getMethodAccessCode(m);
+						if (code <= 0 || (code & config.accessFlagsFilter) != 0x0)
+							continue;
+					}
+
+					// normalize java|dex bytecode by skipping compiler-generated methods
+					if (SootHierarchy.isBridgeOrSynthetic(m)) {
+						continue;
+					}
+
+					String normalizedDesc = normalizeAnonymousInnerClassConstructor(hierarchy, m);
+					byte[] hash = hashFunc.hash(normalizedDesc != null? normalizedDesc : getFuzzyDescriptor(hierarchy, m));
+					methodNodes.add(new MethodNode(hash, SootHierarchy.getSignature(m)));
+				}
+
+				return generateClassNode(methodNodes, clazz.getName(), hashFunc, comp);
+			}
+
+			@Override
+			public String getPackageName(SootClass clazz) {
+				return PackageUtils.getPackageName(clazz.getName());
+			}
+		}, threads);
+	}
+
+
+	/**
+	 * Generates the class nodes for the classes of a class model, e.g. a WALA class hierarchy or a Soot scene
+	 */
+	private interface ClassNodeGenerator<C> {
+		/**
+		 * @return the class node of clazz, or null if the class is skipped
+		 */
+		ClassNode generate(C clazz, IHash hashFunc, NodeComparator comp);
+
+		String getPackageName(C clazz);
+	}
+
+	private <C> void generate(final List<C> classes, final ClassNodeGenerator<C> generator, int threads) throws NoSuchAlgorithmException {
+		IHash hashFunc = config.hashAlgorithm.newHashFunction();
+		final NodeComparator comp = new NodeComparator();
+
+		// create map package name -> clazzNodes by class position
+		final ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, ClassNode>> packageMap = new ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, ClassNode>>();
+
+		if (threads <= 1 || classes.size() < 2) {
+			generateClassNodes(classes, 0, classes.size(), generator, packageMap, hashFunc, comp);
+		} else {
+			// contiguous chunks of classes, each one hashed with its own hash function
+			final int nChunks = Math.min(classes.size(), threads * 4);
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(nChunks);
+
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				for (int i = 0; i < nChunks; i++) {
+					final int from = (int) ((long) classes.size() * i / nChunks);
+					final int to = (int) ((long) classes.size() * (i+1) / nChunks);
+					futures.add(pool.submit(() -> {
+						generateClassNodes(classes, from, to, generator, packageMap, config.hashAlgorithm.newHashFunction(), comp);
+						return null;
+					}));
 				}
-				packageMap.get(pckgName).add(clazzNode);
+
+				for (Future<Void> future: futures)
+					future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while generating class nodes", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof NoSuchAlgorithmException) throw (NoSuchAlgorithmException) cause;
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				if (cause instanceof Error) throw (Error) cause;
+				throw new RuntimeException(cause);
+			} finally {
+				pool.shutdownNow();
 			}
 		}
-		
-		
+
 		Collection<PackageNode> packageNodes = config.filterDups? new TreeSet<PackageNode>(comp) : new ArrayList<PackageNode>();
 		for (String pckgName: new TreeSet<String>(packageMap.keySet())) {
+			// class nodes are added in class order, i.e. duplicates are filtered as in sequential order
+			Collection<ClassNode> classNodes = config.filterDups? new TreeSet<ClassNode>(comp) : new ArrayList<ClassNode>();
+			classNodes.addAll(packageMap.get(pckgName).values());
+
 			if (!config.filterDups) 
-				Collections.sort((List<ClassNode>) packageMap.get(pckgName), comp);  // sort but do not filter dups
+				Collections.sort((List<ClassNode>) classNodes, comp);  // sort but do not filter dups
 			
-			byte[] packageHash = hash(packageMap.get(pckgName), hashFunc);
+			byte[] packageHash = hash(classNodes, hashFunc);
 			PackageNode n = new PackageNode(packageHash, pckgName);
 			if (!config.buildVerboseness.equals(HTREE_BUILD_VERBOSENESS.MINIMAL)) // do not add class nodes in min verboseness
-				n.childs.addAll(packageMap.get(pckgName));
+				n.childs.addAll(classNodes);
 			packageNodes.add(n);
 		}
 
@@ -555,6 +682,42 @@ public class HashTree implements Serializable {
 		rootNode = new Node(libraryHash);
 		rootNode.childs.addAll(packageNodes);
 	}
+
+
+	/**
+	 * Generates the class nodes for classes[from, to) and adds them to the packageMap by class position
+	 */
+	private <C> void generateClassNodes(List<C> classes, int from, int to, ClassNodeGenerator<C> generator, ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, ClassNode>> packageMap, IHash hashFunc, NodeComparator comp) {
+		for (int i = from; i < to; i++) {
+			C clazz = classes.get(i);
+
+			ClassNode clazzNode = generator.generate(clazz, hashFunc, comp);
+			if (clazzNode == null) {
+				continue;
+			}
+
+			String pckgName = generator.getPackageName(clazz);
+			packageMap.computeIfAbsent(pckgName, k -> new ConcurrentSkipListMap<Integer, ClassNode>()).put(i, clazzNode);
+		}
+	}
+
+	private ClassNode generateClassNode(Collection<MethodNode> methodNodes, String simpleName, IHash hashFunc, NodeComparator comp) {
+		// normalization (if we have no methods, either because there are none or due to our filter properties, skip this class)
+		if (methodNodes.isEmpty()) {
+			return null;
+		}
+		
+		if (!config.filterDups) 
+			Collections.sort((List<MethodNode>) methodNodes, comp);  // sort but do not filter dups
+
+		byte[] clazzHash = hash(methodNodes, hashFunc);
+		String classIdentifier = config.buildVerboseness == HTREE_BUILD_VERBOSENESS.DEBUG || config.buildVerboseness == HTREE_BUILD_VERBOSENESS.TRACE? simpleName : "";
+		ClassNode clazzNode = new ClassNode(clazzHash, classIdentifier);
+		
+		// only store method hashes if configured (space vs accuracy)
+		clazzNode.childs = config.buildVerboseness == HTREE_BUILD_VERBOSENESS.TRACE? new ArrayList<Node>(methodNodes) : new ArrayList<Node>();
+		return clazzNode;
+	}
 	
 	
 	public Node getSubTreeByPackage(PackageTree ptree) throws NoSuchAlgorithmException {
@@ -564,7 +727,7 @@ public class HashTree implements Serializable {
 		// equal or start with the rootPackage, then create and return a new rootnode with the collected package nodes
 		// as child
 		NodeComparator comp = new NodeComparator();
-		IHash hashFunc = new HashImpl(config.hashAlgorithm.toString());
+		IHash hashFunc = config.hashAlgorithm.newHashFunction();
 		Collection<PackageNode> childs = config.filterDups? new TreeSet<PackageNode>(comp) : new ArrayList<PackageNode>();
 		for (Node n: rootNode.childs) {
 			PackageNode pn = (PackageNode) n;
@@ -591,7 +754,7 @@ public class HashTree implements Serializable {
 		// equal or start with the rootPackage, then create and return a new rootnode with the collected package nodes
 		// as child
 		NodeComparator comp = new NodeComparator();
-		IHash hashFunc = new HashImpl(config.hashAlgorithm.toString());
+		IHash hashFunc = config.hashAlgorithm.newHashFunction();
 		Collection<PackageNode> childs = config.filterDups? new TreeSet<PackageNode>(comp) : new ArrayList<PackageNode>();
 		childs.addAll(pnodes);
 
@@ -616,18 +779,25 @@ public class HashTree implements Serializable {
 	 * @param hashFunc  a hash function 
 	 * @return a hash
 	 */
-	public static byte[] hash(Collection<? extends Node> nodes, final IHash hashFunc) {
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-		
-		try {
-			for (Node node: nodes)
-				outputStream.write(node.hash);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	public static byte[] hash(final Collection<? extends Node> nodes, final IHash hashFunc) {
+		// feed the node hashes one by one instead of concatenating them
+		return hashFunc.hash(new Iterable<byte[]>() {
+			@Override
+			public Iterator<byte[]> iterator() {
+				final Iterator<? extends Node> it = nodes.iterator();
+				return new Iterator<byte[]>() {
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
 
-		byte[] arr = outputStream.toByteArray();
-		return hashFunc.hash(arr);
+					@Override
+					public byte[] next() {
+						return it.next().hash;
+					}
+				};
+			}
+		});
 	}
 
 
@@ -677,8 +847,7 @@ public class HashTree implements Serializable {
 			// check if both argument types are custom types
 			for (int i : new Integer[]{1, 2}) {
 				if (m.getParameterType(i).getClassLoader().equals(ClassLoaderReference.Application)) {
-					IClass ct = m.getClassHierarchy().lookupClass(m.getParameterType(1));
-					boolean isAppClazz = ct == null || WalaUtils.isAppClass(ct);
+					boolean isAppClazz = isAppType(m.getClassHierarchy(), m.getParameterType(1));
 					if (!isAppClazz)
 						return null;
 				} else
@@ -686,11 +855,13 @@ public class HashTree implements Serializable {
 			}
 
 			IClass superClazz = null;
-			try {
-				IClass ic = WalaUtils.lookupClass(m.getClassHierarchy(), enclosingClazzName);
-				superClazz = ic.getSuperclass();
-			} catch (ClassNotFoundException e) {
-				return null;
+			synchronized (m.getClassHierarchy()) {
+				try {
+					IClass ic = WalaUtils.lookupClass(m.getClassHierarchy(), enclosingClazzName);
+					superClazz = ic.getSuperclass();
+				} catch (ClassNotFoundException e) {
+					return null;
+				}
 			}
 
 			String argType1 = Utils.convertToFullClassName(m.getParameterType(1).getName().toString());
@@ -707,8 +878,7 @@ public class HashTree implements Serializable {
 				for (int i = 2; i < m.getNumberOfParameters(); i++) {
 
 					if (m.getParameterType(i).getClassLoader().equals(ClassLoaderReference.Application)) {
-						IClass ct = m.getClassHierarchy().lookupClass(m.getParameterType(i));
-						boolean isAppClazz = ct == null || WalaUtils.isAppClass(ct);
+						boolean isAppClazz = isAppType(m.getClassHierarchy(), m.getParameterType(i));
 						sb.append(isAppClazz ? customTypeReplacement : m.getParameterType(i).getName().toString());
 					} else
 						sb.append(m.getParameterType(i).getName().toString());
@@ -722,7 +892,77 @@ public class HashTree implements Serializable {
 	}
 
 
+	/**
+	 * Soot equivalent of {@link #normalizeAnonymousInnerClassConstructor(IMethod)}, i.e. with the same WALA
+	 * parameter numbering, where the receiver of a constructor is parameter 0
+	 * @param hierarchy  the {@link SootHierarchy} of the app
+	 * @param m   the {@link SootMethod} to normalize
+	 * @return  null if this normalization does not apply, otherwise the normalized fuzzy descriptor
+	 */
+	private static String normalizeAnonymousInnerClassConstructor(SootHierarchy hierarchy, SootMethod m) {
+		String clazzName = m.getDeclaringClass().getName();
+		int numberOfParameters = m.getParameterCount() + (m.isStatic()? 0 : 1);
+
+		if (WalaUtils.isAnonymousInnerInnerClass(clazzName) && m.isConstructor() && numberOfParameters > 1) {
+			// this can be anything -> normalize constructor to (X)V
+			return "(X)V";
+		}
+
+		// check if we have an anonymous inner class constructor with a sufficient number of arguments
+		if (WalaUtils.isAnonymousInnerClass(clazzName) && m.isConstructor() && numberOfParameters > 2) {
+			String enclosingClazzName = clazzName.substring(0, clazzName.lastIndexOf('$'));
+
+			// check if both argument types are custom types
+			for (int i : new Integer[]{1, 2}) {
+				if (SootHierarchy.isAppLoaderType(m.getParameterType(i-1))) {
+					boolean isAppClazz = hierarchy.isAppType(m.getParameterType(0));
+					if (!isAppClazz)
+						return null;
+				} else
+					return null;
+			}
+
+			SootClass ic = hierarchy.lookupClass(enclosingClazzName);
+			if (ic == null)
+				return null;
+			String superClazzName = ic.hasSuperclass()? ic.getSuperclass().getName() : "null";
+
+			String argType1 = Utils.convertToFullClassName(SootHierarchy.getTypeName(m.getParameterType(0)));
+			String argType2 = Utils.convertToFullClassName(SootHierarchy.getTypeName(m.getParameterType(1)));
+
+			// now check whether this normalization needs to be applied
+			if (argType1.equals(enclosingClazzName) &&
+				argType2.equals(superClazzName)) {
+
+				StringBuilder sb = new StringBuilder("(");
+				for (int i = 2; i < numberOfParameters; i++) {
+					Type t = m.getParameterType(i-1);
+					sb.append(hierarchy.isAppType(t)? customTypeReplacement : SootHierarchy.getTypeName(t));
+				}
+				sb.append(")V");
+
+				return sb.toString();
+			}
+		}
+		return null;
+	}
+
+
 	private static final String customTypeReplacement = "X";
+
+	/**
+	 * Class lookups are synchronized on the class hierarchy, as unresolved types are recorded in a
+	 * plain set and class nodes may be generated concurrently
+	 * @param cha  the {@link IClassHierarchy} instance
+	 * @param type  an application type
+	 * @return true, if the type is an app class or cannot be resolved
+	 */
+	private static boolean isAppType(IClassHierarchy cha, TypeReference type) {
+		synchronized (cha) {
+			IClass ct = cha.lookupClass(type);
+			return ct == null || WalaUtils.isAppClass(ct);
+		}
+	}
 	
 	/**
 	 * A {@link Descriptor} only describes input arg types + return type, e.g.
@@ -741,8 +981,7 @@ public class HashTree implements Serializable {
 			boolean isAppClazz = false;
 
 			if (m.getParameterType(i).getClassLoader().equals(ClassLoaderReference.Application)) {
-				IClass ct = m.getClassHierarchy().lookupClass(m.getParameterType(i));
-				isAppClazz = ct == null || WalaUtils.isAppClass(ct);
+				isAppClazz = isAppType(m.getClassHierarchy(), m.getParameterType(i));
 				sb.append(isAppClazz? customTypeReplacement : m.getParameterType(i).getName().toString());
 			} else
 				sb.append(m.getParameterType(i).getName().toString());
@@ -750,8 +989,7 @@ public class HashTree implements Serializable {
 		}
 		sb.append(")");
 		if (m.getReturnType().getClassLoader().equals(ClassLoaderReference.Application)) {
-			IClass ct = m.getClassHierarchy().lookupClass(m.getReturnType());
-			sb.append(ct == null || WalaUtils.isAppClass(ct)? customTypeReplacement : m.getReturnType().getName().toString());
+			sb.append(isAppType(m.getClassHierarchy(), m.getReturnType())? customTypeReplacement : m.getReturnType().getName().toString());
 		} else
 			sb.append(m.getReturnType().getName().toString());
 		
@@ -759,6 +997,24 @@ public class HashTree implements Serializable {
 	}
 	
 	
+	/**
+	 * Soot equivalent of {@link #getFuzzyDescriptor(IMethod)}
+	 * @param hierarchy  the {@link SootHierarchy} of the app
+	 * @param m  {@link SootMethod}
+	 * @return a fuzzy descriptor
+	 */
+	private static String getFuzzyDescriptor(SootHierarchy hierarchy, SootMethod m) {
+		StringBuilder sb = new StringBuilder("(");
+
+		for (Type t: m.getParameterTypes())
+			sb.append(hierarchy.isAppType(t)? customTypeReplacement : SootHierarchy.getTypeName(t));
+		sb.append(")");
+		sb.append(hierarchy.isAppType(m.getReturnType())? customTypeReplacement : SootHierarchy.getTypeName(m.getReturnType()));
+
+		return sb.toString();
+	}
+	
+	
 	public static HashTree getTreeByConfig(Collection<HashTree> treeList, Config config) {
 		for (HashTree lht: treeList)
 			if (lht.getConfig().equals(config))
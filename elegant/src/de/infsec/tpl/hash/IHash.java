@@ -14,7 +14,21 @@
 
 package de.infsec.tpl.hash;
 
+import java.io.ByteArrayOutputStream;
+
 public interface IHash {
 	public byte[] hash(String str);
 	public byte[] hash(byte[] b);
+
+	/**
+	 * Hashes the concatenation of the given chunks, implementations may do so without concatenating them first
+	 * @param chunks  the byte arrays to hash
+	 * @return the hash
+	 */
+	public default byte[] hash(Iterable<byte[]> chunks) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		for (byte[] b: chunks)
+			outputStream.write(b, 0, b.length);
+		return hash(outputStream.toByteArray());
+	}
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.hash;
+
+
+/**
+ * MurmurHash3 (x64, 128 bit, seed 0), a fast non-cryptographic hash.
+ * Input is consumed incrementally in 16 byte blocks, strings are UTF-8 encoded on the fly, and
+ * chunks are hashed without concatenating them first, i.e. only the resulting hash is allocated.
+ * Instances are not thread-safe.
+ */
+public class Murmur3Hash extends Hash {
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private long h1;
+	private long h2;
+	private long length;
+
+	// pending bytes of the current block
+	private final byte[] block = new byte[16];
+	private int blockLength;
+
+	public Murmur3Hash() {
+		reset();
+	}
+
+	@Override
+	public byte[] hash(String str) {
+		reset();
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c < 0x80) {
+				update((byte) c);
+			} else if (c < 0x800) {
+				update((byte) (0xc0 | (c >>> 6)));
+				update((byte) (0x80 | (c & 0x3f)));
+			} else if (Character.isSurrogate(c)) {
+				int cp = Character.isHighSurrogate(c) && i+1 < str.length() && Character.isLowSurrogate(str.charAt(i+1))?
+						Character.toCodePoint(c, str.charAt(++i)) : -1;
+				if (cp < 0) {
+					update((byte) '?');   // malformed surrogates are replaced, as String.getBytes("UTF-8") does
+				} else {
+					update((byte) (0xf0 | (cp >>> 18)));
+					update((byte) (0x80 | ((cp >>> 12) & 0x3f)));
+					update((byte) (0x80 | ((cp >>> 6) & 0x3f)));
+					update((byte) (0x80 | (cp & 0x3f)));
+				}
+			} else {
+				update((byte) (0xe0 | (c >>> 12)));
+				update((byte) (0x80 | ((c >>> 6) & 0x3f)));
+				update((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+		return digest();
+	}
+
+	@Override
+	public byte[] hash(byte[] b) {
+		reset();
+		update(b);
+		return digest();
+	}
+
+	@Override
+	public byte[] hash(Iterable<byte[]> chunks) {
+		reset();
+		for (byte[] b: chunks)
+			update(b);
+		return digest();
+	}
+
+
+	private void reset() {
+		h1 = 0L;
+		h2 = 0L;
+		length = 0L;
+		blockLength = 0;
+	}
+
+	private void update(byte b) {
+		block[blockLength++] = b;
+		if (blockLength == 16) {
+			mixBlock(getLong(block, 0), getLong(block, 8));
+			blockLength = 0;
+		}
+	}
+
+	private void update(byte[] b) {
+		int i = 0;
+
+		// fill up the pending block first
+		while (blockLength > 0 && i < b.length)
+			update(b[i++]);
+
+		for (; i + 16 <= b.length; i += 16)
+			mixBlock(getLong(b, i), getLong(b, i + 8));
+
+		while (i < b.length)
+			update(b[i++]);
+	}
+
+	private void mixBlock(long k1, long k2) {
+		h1 ^= mixK1(k1);
+		h1 = Long.rotateLeft(h1, 27);
+		h1 += h2;
+		h1 = h1 * 5 + 0x52dce729;
+
+		h2 ^= mixK2(k2);
+		h2 = Long.rotateLeft(h2, 31);
+		h2 += h1;
+		h2 = h2 * 5 + 0x38495ab5;
+
+		length += 16;
+	}
+
+	private byte[] digest() {
+		// tail
+		long k1 = 0L;
+		long k2 = 0L;
+		for (int i = blockLength-1; i >= 8; i--)
+			k2 = (k2 << 8) | (block[i] & 0xff);
+		for (int i = Math.min(blockLength, 8)-1; i >= 0; i--)
+			k1 = (k1 << 8) | (block[i] & 0xff);
+		h1 ^= mixK1(k1);
+		h2 ^= mixK2(k2);
+		length += blockLength;
+
+		// finalization
+		h1 ^= length;
+		h2 ^= length;
+
+		h1 += h2;
+		h2 += h1;
+
+		h1 = fmix64(h1);
+		h2 = fmix64(h2);
+
+		h1 += h2;
+		h2 += h1;
+
+		byte[] hash = new byte[16];
+		putLong(hash, 0, h1);
+		putLong(hash, 8, h2);
+		return hash;
+	}
+
+	private static long mixK1(long k1) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= C2;
+		return k1;
+	}
+
+	private static long mixK2(long k2) {
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= C1;
+		return k2;
+	}
+
+	private static long fmix64(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	// little-endian, as the reference implementation
+	private static long getLong(byte[] b, int off) {
+		long l = 0L;
+		for (int i = 7; i >= 0; i--)
+			l = (l << 8) | (b[off + i] & 0xff);
+		return l;
+	}
+
+	private static void putLong(byte[] b, int off, long l) {
+		for (int i = 0; i < 8; i++) {
+			b[off + i] = (byte) l;
+			l >>>= 8;
+		}
+	}
+}
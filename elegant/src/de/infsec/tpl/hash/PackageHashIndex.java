@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.hash;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.infsec.tpl.hash.HashTree.Node;
+
+
+/**
+ * Inverted index of the package nodes of a {@link HashTree}, built once per app hash tree.
+ * Package nodes are addressed by their position in {@link HashTree#getPackageNodes()}, and can be
+ * looked up by their own hash or by the hash of any class they contain.
+ */
+public class PackageHashIndex {
+	private static final int[] NONE = new int[0];
+
+	private final List<Node> packageNodes;
+	private final Map<ByteBuffer, int[]> packagesByHash = new HashMap<ByteBuffer, int[]>();
+	private final Map<ByteBuffer, int[]> packagesByClassHash = new HashMap<ByteBuffer, int[]>();
+
+	public PackageHashIndex(HashTree hashTree) {
+		this.packageNodes = new ArrayList<Node>(hashTree.getPackageNodes());
+
+		Map<ByteBuffer, List<Integer>> byHash = new HashMap<ByteBuffer, List<Integer>>();
+		Map<ByteBuffer, List<Integer>> byClassHash = new HashMap<ByteBuffer, List<Integer>>();
+		for (int i = 0; i < packageNodes.size(); i++) {
+			Node pn = packageNodes.get(i);
+			add(byHash, pn.hash, i);
+			for (Node cn: pn.childs)
+				add(byClassHash, cn.hash, i);
+		}
+
+		freeze(byHash, packagesByHash);
+		freeze(byClassHash, packagesByClassHash);
+	}
+
+	// positions are added in ascending order, a package is added at most once per hash
+	private static void add(Map<ByteBuffer, List<Integer>> index, byte[] hash, int pos) {
+		List<Integer> positions = index.get(ByteBuffer.wrap(hash));
+		if (positions == null) {
+			positions = new ArrayList<Integer>(1);
+			index.put(ByteBuffer.wrap(hash), positions);
+		}
+		if (positions.isEmpty() || positions.get(positions.size()-1) != pos)
+			positions.add(pos);
+	}
+
+	private static void freeze(Map<ByteBuffer, List<Integer>> from, Map<ByteBuffer, int[]> to) {
+		for (Map.Entry<ByteBuffer, List<Integer>> e: from.entrySet()) {
+			int[] positions = new int[e.getValue().size()];
+			for (int i = 0; i < positions.length; i++)
+				positions[i] = e.getValue().get(i);
+			to.put(e.getKey(), positions);
+		}
+	}
+
+	/**
+	 * @return the number of indexed package nodes
+	 */
+	public int size() {
+		return packageNodes.size();
+	}
+
+	/**
+	 * @param pos  the position of a package node
+	 * @return the package node at position pos
+	 */
+	public Node getPackageNode(int pos) {
+		return packageNodes.get(pos);
+	}
+
+	/**
+	 * @param hash  a package hash
+	 * @return the ascending positions of all package nodes with this hash
+	 */
+	public int[] getPackagesByHash(byte[] hash) {
+		int[] positions = packagesByHash.get(ByteBuffer.wrap(hash));
+		return positions == null? NONE : positions;
+	}
+
+	/**
+	 * @param hash  a class hash
+	 * @return the ascending positions of all package nodes that contain a class with this hash
+	 */
+	public int[] getPackagesByClassHash(byte[] hash) {
+		int[] positions = packagesByClassHash.get(ByteBuffer.wrap(hash));
+		return positions == null? NONE : positions;
+	}
+
+	/**
+	 * Hash-based equivalent of {@code getPackageNodes().containsAll(nodes)}
+	 * @param nodes  a collection of package nodes
+	 * @return true, if there is an indexed package node with the same hash for every node
+	 */
+	public boolean containsAllPackages(Collection<Node> nodes) {
+		for (Node n: nodes) {
+			if (!packagesByHash.containsKey(ByteBuffer.wrap(n.hash)))
+				return false;
+		}
+		return true;
+	}
+}
@@ -17,6 +17,8 @@ package de.infsec.tpl.pkg;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -28,14 +30,29 @@ import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 
 import de.infsec.tpl.hash.HashTree.PackageNode;
+import de.infsec.tpl.utils.SootHierarchy;
 import de.infsec.tpl.utils.Utils;
 import de.infsec.tpl.utils.WalaUtils;
 
+import soot.SootClass;
+
 
 public class PackageTree implements Serializable {
 	private static final long serialVersionUID = -8286612852897097767L;
 	
+	// child lists of at most this size are searched linearly
+	private static final int MIN_INDEXED_CHILDS = 8;
+
 	private Node rootNode;
+
+	// modification count, caches are only valid for the count they were computed at
+	private transient volatile int modCount;
+
+	// caches, not serialized and computed on demand, i.e. safe for concurrent readers
+	private transient volatile boolean hasRootPackageCache;
+	private transient volatile String rootPackageCache;
+	private transient volatile Map<String, Integer> packagesCache;
+	private transient volatile Set<String> allPackagesCache;
 	
 	public class Node implements Serializable {
 		private static final long serialVersionUID = -2117889548993263279L;
@@ -43,6 +60,11 @@ public class PackageTree implements Serializable {
 		public String name;
 		public int clazzCount;
 		public List<Node> childs;
+
+		// name -> child, rebuilt whenever it has gone out of sync with childs
+		private transient volatile Map<String, Node> childIndex;
+		// (modification count + 1) << 32 | number of leaf childs, 0 if not computed yet
+		private transient volatile long leafCountCache;
 		
 		public Node(String name) {
 			this.name = name;
@@ -51,11 +73,55 @@ public class PackageTree implements Serializable {
 		}
 		
 		public int getNumberOfLeafNodes() {
+			long stamp = (long) (modCount + 1) << 32;
+			long cache = leafCountCache;
+			if ((cache & 0xffffffff00000000L) == stamp)
+				return (int) cache;
+
 			int result = 0;
 			for (Node child: childs)
 				if (child.isLeaf()) result++;
+
+			leafCountCache = stamp | result;
 			return result;
 		}
+
+		/**
+		 * @param name  a package name fragment
+		 * @return the child with this name, or null if there is none
+		 */
+		public Node getChild(String name) {
+			if (childs.size() <= MIN_INDEXED_CHILDS) {
+				for (Node node: childs) {
+					if (node.name.equals(name))
+						return node;
+				}
+				return null;
+			}
+
+			Map<String, Node> index = childIndex;
+			if (index == null || index.size() != childs.size()) {
+				index = new HashMap<String, Node>();
+				for (Node node: childs) {
+					if (!index.containsKey(node.name))
+						index.put(node.name, node);
+				}
+				childIndex = index;
+			}
+			return index.get(name);
+		}
+
+		/**
+		 * Appends a child, use this instead of modifying childs to keep the caches of the tree valid
+		 * @param child  a node of the same tree
+		 */
+		public void addChild(Node child) {
+			childs.add(child);
+			Map<String, Node> index = childIndex;
+			if (index != null && !index.containsKey(child.name))
+				index.put(child.name, child);
+			invalidateCaches();
+		}
 		
 		@Override
 		public boolean equals(Object obj) {
@@ -121,6 +187,21 @@ public class PackageTree implements Serializable {
 		
 	}
 
+	/**
+	 * Generate PackageTree for the app classes of a Soot scene, equivalent to {@code make(cha, true)}
+	 * for a WALA class hierarchy of the same app
+	 * @param hierarchy  the {@link SootHierarchy} of the app
+	 * @return {@link PackageTree} instance
+	 */
+	public static PackageTree make(SootHierarchy hierarchy) {
+		PackageTree tree = new PackageTree();
+		for (SootClass clazz: hierarchy.getAppClasses()) {
+			if (hierarchy.isAppClass(clazz))
+				tree.update(clazz.getName(), true);
+		}
+		return tree;
+	}
+
 	/**
 	 * Generate PackageTree with class name references provided as
 	 * collection of {@link IClass}, {@link String}, or {@link PackageNode} objects.
@@ -147,6 +228,13 @@ public class PackageTree implements Serializable {
 		this.rootNode = new Node("Root");
 	}
 
+	private void invalidateCaches() {
+		modCount++;
+		hasRootPackageCache = false;
+		packagesCache = null;
+		allPackagesCache = null;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (!(obj instanceof PackageTree))
@@ -174,7 +262,12 @@ public class PackageTree implements Serializable {
 	 * @return  a mapping from package name to number of included classes
 	 */
 	public Map<String, Integer> getPackages() {
-		return getPackages(rootNode, "", false);
+		Map<String, Integer> packages = packagesCache;
+		if (packages == null) {
+			packages = Collections.unmodifiableMap(getPackages(rootNode, "", false));
+			packagesCache = packages;
+		}
+		return packages;
 	}
 	
 	/**
@@ -182,11 +275,16 @@ public class PackageTree implements Serializable {
 	 * @return  an ordered set of package names
 	 */
 	public Set<String> getAllPackages() {
-		return getPackages(rootNode, "", true).keySet();
+		Set<String> allPackages = allPackagesCache;
+		if (allPackages == null) {
+			allPackages = Collections.unmodifiableSet(getPackages(rootNode, "", true).keySet());
+			allPackagesCache = allPackages;
+		}
+		return allPackages;
 	}
 
 	public int getNumberOfNonEmptyPackages() {
-		return getPackages().keySet().size();
+		return getPackages().size();
 	}
 	
 	public int getNumberOfAppClasses() {
@@ -204,6 +302,14 @@ public class PackageTree implements Serializable {
 	 * @return  the unique root package name or null otherwise
 	 */
 	public String getRootPackage() {
+		if (!hasRootPackageCache) {
+			rootPackageCache = computeRootPackage();
+			hasRootPackageCache = true;
+		}
+		return rootPackageCache;
+	}
+
+	private String computeRootPackage() {
 		String rootPackage = "";
 		Node curNode = rootNode;
 
@@ -223,7 +329,7 @@ public class PackageTree implements Serializable {
 			int max = 0;
 			// determine largest subtree in terms of packages
 			for (int i = 0; i < curNode.childs.size(); i++) {
-				int tmp = getPackages(curNode.childs.get(i), "", true).size();
+				int tmp = getNumberOfNodes(curNode.childs.get(i));
 				if (tmp > max) {
 					id = i;
 					max = tmp;
@@ -253,6 +359,14 @@ public class PackageTree implements Serializable {
 	}
 
 	
+	// number of packages of a subtree, i.e. getPackages(n, "", true).size()
+	private static int getNumberOfNodes(Node n) {
+		int result = 1;
+		for (Node c: n.childs)
+			result += getNumberOfNodes(c);
+		return result;
+	}
+
 	private Map<String, Integer> getPackages(Node n, String curPath, boolean dumpAllPackages) {
 		TreeMap<String, Integer> res = new TreeMap<String, Integer>();
 		
@@ -342,9 +456,10 @@ public class PackageTree implements Serializable {
 	private boolean update(List<String> packageStruct) {
 		// update
 		Node curNode = rootNode;
-		if (packageStruct.isEmpty())
+		if (packageStruct.isEmpty()) {
 			curNode.clazzCount++;
-		else {
+			invalidateCaches();
+		} else {
 			for (int i = 0; i < packageStruct.size(); i++) {
 				Node n = matchChilds(curNode, packageStruct.get(i));
 				
@@ -352,12 +467,13 @@ public class PackageTree implements Serializable {
 					curNode = n; 
 				} else {
 					Node newNode = new Node(packageStruct.get(i));
-					curNode.childs.add(newNode);
+					curNode.addChild(newNode);
 					curNode = newNode;
 				}
 				
 				if (i == packageStruct.size()-1) {
 					curNode.clazzCount++;
+					invalidateCaches();
 				}
 			}
 		}
@@ -368,11 +484,7 @@ public class PackageTree implements Serializable {
 	
 	
 	private Node matchChilds(Node n, String str) {
-		for (Node node: n.childs) {
-			if (node.name.equals(str))
-				return node;
-		}
-		return null;
+		return n.getChild(str);
 	}
 	
 	
@@ -404,6 +516,7 @@ public class PackageTree implements Serializable {
 		}
 
 		curNode.clazzCount++; 
+		invalidateCaches();
 		return true;
 	}
 	
@@ -564,7 +677,7 @@ public class PackageTree implements Serializable {
     	
     	PackageTree subTree = new PackageTree();
     	if (fragments.get(0).equals(this.rootNode.name))
-    		subTree.rootNode = newNodeInstance(this.rootNode);
+    		subTree.rootNode = subTree.newNodeInstance(this.rootNode);
     	Node curSubTreeNode = subTree.rootNode;
     	
     	Node curNode = this.rootNode;
@@ -575,14 +688,14 @@ public class PackageTree implements Serializable {
     			return subTree;
     		else {
     			curNode = n;
-    			Node newNode = newNodeInstance(curNode);
-    			curSubTreeNode.childs.add(newNode);
+    			Node newNode = subTree.newNodeInstance(curNode);
+    			curSubTreeNode.addChild(newNode);
     			curSubTreeNode = newNode;
     		}
     	}
 
     	// copy any remaining subtree
-    	copySubTree(curNode, curSubTreeNode);
+    	subTree.copySubTree(curNode, curSubTreeNode);
     	
     	return subTree;
     }
@@ -591,14 +704,14 @@ public class PackageTree implements Serializable {
 	/**
 	 * Copies the entire subtree from one node to another node 
 	 * @param fromTreeNode the {@Node} to be copied from
-	 * @param toTreeNode the {@Node} to copy to
+	 * @param toTreeNode the {@Node} of this tree to copy to
 	 */
     public void copySubTree(Node fromTreeNode, Node toTreeNode) {
     	for (Node child: fromTreeNode.childs) {
     		Node copyChild = newNodeInstance(child);
     		if (!child.isLeaf())
     			copySubTree(child, copyChild);
-    		toTreeNode.childs.add(copyChild);
+    		toTreeNode.addChild(copyChild);
     	}
     }
  
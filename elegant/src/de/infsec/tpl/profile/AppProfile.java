@@ -15,12 +15,16 @@
 package de.infsec.tpl.profile;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 
 import de.infsec.tpl.hash.HashTree;
+import de.infsec.tpl.hash.HashTree.HashAlgorithm;
 import de.infsec.tpl.pkg.PackageTree;
+import de.infsec.tpl.utils.SootHierarchy;
 
 
 public class AppProfile extends Profile implements Serializable {
@@ -32,11 +36,49 @@ public class AppProfile extends Profile implements Serializable {
 	}
 
 	public static AppProfile create(IClassHierarchy cha) {
+		return create(cha, Collections.singleton(HashAlgorithm.MD5));
+	}
+
+	/**
+	 * Creates the app profile with hash trees for each of the given hash algorithms
+	 * @param cha  the {@link IClassHierarchy} instance
+	 * @param algorithms  the hash algorithms used by the library profiles to match against
+	 * @return the {@link AppProfile}
+	 */
+	public static AppProfile create(IClassHierarchy cha, Collection<HashAlgorithm> algorithms) {
+		return create(cha, algorithms, 1);
+	}
+
+	/**
+	 * Creates the app profile with hash trees for each of the given hash algorithms
+	 * @param cha  the {@link IClassHierarchy} instance
+	 * @param algorithms  the hash algorithms used by the library profiles to match against
+	 * @param threads  the number of threads the hash trees are generated with
+	 * @return the {@link AppProfile}
+	 */
+	public static AppProfile create(IClassHierarchy cha, Collection<HashAlgorithm> algorithms, int threads) {
 		// generate app package tree
 		PackageTree ptree = Profile.generatePackageTree(cha);
 
 		// generate app hash trees
-		List<HashTree> hashTrees = Profile.generateHashTrees(cha);
+		List<HashTree> hashTrees = Profile.generateHashTrees(cha, algorithms, threads);
+
+		return new AppProfile(ptree, hashTrees);
+	}
+
+	/**
+	 * Creates the app profile from the app classes of a Soot scene, without a WALA class hierarchy
+	 * @param hierarchy  the {@link SootHierarchy} of the app
+	 * @param algorithms  the hash algorithms used by the library profiles to match against
+	 * @param threads  the number of threads the hash trees are generated with
+	 * @return the {@link AppProfile}
+	 */
+	public static AppProfile create(SootHierarchy hierarchy, Collection<HashAlgorithm> algorithms, int threads) {
+		// generate app package tree
+		PackageTree ptree = Profile.generatePackageTree(hierarchy);
+
+		// generate app hash trees
+		List<HashTree> hashTrees = Profile.generateHashTrees(hierarchy, algorithms, threads);
 
 		return new AppProfile(ptree, hashTrees);
 	}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.profile;
+
+import java.util.Arrays;
+
+
+/**
+ * Admission filter over the hash keys of an app, see {@link ProfileStore#keysOf(java.util.List)}.
+ * Keys are probed in a Bloom filter before they are looked up exactly, i.e. most keys of a profile
+ * that the app does not have are answered with a few bit tests instead of a binary search.
+ * Instances are immutable and can be shared between threads.
+ */
+public class KeyFilter {
+	private static final int BITS_PER_KEY = 16;
+	private static final int PROBES = 3;
+
+	private final long[] keys;
+	private final long[] bloom;
+	private final int bloomMask;
+
+	/**
+	 * @param keys  the sorted, distinct keys of the app
+	 */
+	public KeyFilter(long[] keys) {
+		this.keys = keys;
+
+		// power of two with at least BITS_PER_KEY bits per key
+		int bits = Integer.highestOneBit(Math.max(64, Math.min(keys.length, 1 << 26) * BITS_PER_KEY - 1)) << 1;
+		this.bloom = new long[bits >>> 6];
+		this.bloomMask = bits - 1;
+		for (long k: keys) {
+			long h = mix(k);
+			for (int i = 0; i < PROBES; i++) {
+				int bit = probe(h, i);
+				bloom[bit >>> 6] |= 1L << bit;
+			}
+		}
+	}
+
+	/**
+	 * @param key  a profile key
+	 * @return true, if the app has this key
+	 */
+	public boolean contains(long key) {
+		long h = mix(key);
+		for (int i = 0; i < PROBES; i++) {
+			int bit = probe(h, i);
+			if ((bloom[bit >>> 6] & (1L << bit)) == 0)
+				return false;
+		}
+		return Arrays.binarySearch(keys, key) >= 0;
+	}
+
+	private int probe(long h, int i) {
+		// double hashing with the two halves of the mixed key
+		return ((int) h + i * ((int) (h >>> 32) | 1)) & bloomMask;
+	}
+
+	// keys are prefixes of the profile hashes, they are mixed anyway to not depend on the hash algorithm
+	private static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
@@ -92,21 +92,25 @@ public class LibProfile extends Profile implements Serializable {
 	 */
 	public static Map<String,String> getUniqueLibraries(Collection<LibProfile> profiles) {
 		HashMap<String,String> result = new HashMap<String,String>();
-		for (LibProfile p: profiles) {
-			if (!result.containsKey(p.description.name))
-				result.put(p.description.name, p.description.version);
-			else {
-				try {
-					Version v1 = VersionWrapper.valueOf(result.get(p.description.name));
-					Version v2 = VersionWrapper.valueOf(p.description.version);
-	
-					if (v2.greaterThan(v1))
-						result.put(p.description.name, p.description.version);
-				} catch (Exception e) { /* if at least one version is not semver compliant */ }
-			}
-		}
+		for (LibProfile p: profiles)
+			putIfHigherVersion(result, p.description.name, p.description.version);
 		return result;
 	}
+
+	// updates the highest known version of library name
+	static void putIfHigherVersion(Map<String,String> result, String name, String version) {
+		if (!result.containsKey(name))
+			result.put(name, version);
+		else {
+			try {
+				Version v1 = VersionWrapper.valueOf(result.get(name));
+				Version v2 = VersionWrapper.valueOf(version);
+
+				if (v2.greaterThan(v1))
+					result.put(name, version);
+			} catch (Exception e) { /* if at least one version is not semver compliant */ }
+		}
+	}
 	
 	
 	public Pair<String,String> getLibIdentifier() {
@@ -17,6 +17,8 @@ package de.infsec.tpl.profile;
 import java.io.Serializable;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import com.ibm.wala.ipa.cha.IClassHierarchy;
@@ -24,6 +26,7 @@ import com.ibm.wala.ipa.cha.IClassHierarchy;
 import de.infsec.tpl.hash.HashTree;
 import de.infsec.tpl.hash.HashTree.HashAlgorithm;
 import de.infsec.tpl.pkg.PackageTree;
+import de.infsec.tpl.utils.SootHierarchy;
 import de.infsec.tpl.utils.Utils;
 
 
@@ -45,6 +48,12 @@ public abstract class Profile implements Serializable {
 		tree.print(true);
 		return tree;
 	}
+
+	public static PackageTree generatePackageTree(SootHierarchy hierarchy) {
+		PackageTree tree = PackageTree.make(hierarchy);
+		tree.print(true);
+		return tree;
+	}
 		
 	
 	/**
@@ -54,20 +63,71 @@ public abstract class Profile implements Serializable {
 	 */
 	// TODO: option to set different modes (normal, trace+pubonly, normal+pubonly)
 	public static List<HashTree> generateHashTrees(final IClassHierarchy cha) {
-		final HashAlgorithm algorithm = HashAlgorithm.MD5;
+		return generateHashTrees(cha, Collections.singleton(HashAlgorithm.MD5));
+	}
 
+	/**
+	 * Generate hash trees for a certain {@link PackageTree} for all configurations, once per hash algorithm.
+	 * Library profiles only match app hash trees of the same algorithm, e.g. old MD5 profiles and new
+	 * {@link HashAlgorithm#MURMUR3_128} profiles can be matched side by side by generating both. This tree
+	 * has no library profiler, new profiles are generated with MURMUR3_128 by passing it here.
+	 * @param cha  the {@link IClassHierarchy} instance
+	 * @param algorithms  the hash algorithms
+	 * @return  a List of {@link HashTree} for every configuration and algorithm
+	 */
+	public static List<HashTree> generateHashTrees(final IClassHierarchy cha, final Collection<HashAlgorithm> algorithms) {
+		return generateHashTrees(cha, algorithms, 1);
+	}
+
+	/**
+	 * Generate hash trees for all configurations and hash algorithms, with class nodes being hashed in parallel
+	 * @param cha  the {@link IClassHierarchy} instance
+	 * @param algorithms  the hash algorithms
+	 * @param threads  the number of threads per hash tree
+	 * @return  a List of {@link HashTree} for every configuration and algorithm
+	 */
+	public static List<HashTree> generateHashTrees(final IClassHierarchy cha, final Collection<HashAlgorithm> algorithms, final int threads) {
+		List<HashTree> hTrees = new ArrayList<HashTree>();
+		for (HashAlgorithm algorithm: algorithms) {
+			try {
+				boolean filterDups = false;
+				boolean filterInnerClasses = false;
+				
+				HashTree hashTree = new HashTree(filterDups, filterInnerClasses, algorithm);
+
+				hashTree.generate(cha, threads);
+				hTrees.add(hashTree);
+			} catch (NoSuchAlgorithmException e) {
+				System.err.println(Utils.stacktrace2Str(e));
+			}	
+		}
+		
+		return hTrees;
+	}
+
+	/**
+	 * Generate hash trees for the app classes of a Soot scene, for all configurations and hash algorithms.
+	 * The hash trees equal the ones generated from a WALA class hierarchy of the same app.
+	 * @param hierarchy  the {@link SootHierarchy} of the app
+	 * @param algorithms  the hash algorithms
+	 * @param threads  the number of threads per hash tree
+	 * @return  a List of {@link HashTree} for every configuration and algorithm
+	 */
+	public static List<HashTree> generateHashTrees(final SootHierarchy hierarchy, final Collection<HashAlgorithm> algorithms, final int threads) {
 		List<HashTree> hTrees = new ArrayList<HashTree>();
-		try {
-			boolean filterDups = false;
-			boolean filterInnerClasses = false;
-			
-			HashTree hashTree = new HashTree(filterDups, filterInnerClasses, algorithm);
+		for (HashAlgorithm algorithm: algorithms) {
+			try {
+				boolean filterDups = false;
+				boolean filterInnerClasses = false;
+				
+				HashTree hashTree = new HashTree(filterDups, filterInnerClasses, algorithm);
 
-			hashTree.generate(cha);
-			hTrees.add(hashTree);
-		} catch (NoSuchAlgorithmException e) {
-			System.err.println(Utils.stacktrace2Str(e));
-		}	
+				hashTree.generate(hierarchy, threads);
+				hTrees.add(hashTree);
+			} catch (NoSuchAlgorithmException e) {
+				System.err.println(Utils.stacktrace2Str(e));
+			}	
+		}
 		
 		return hTrees;
 	}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.profile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.infsec.tpl.hash.HashTree;
+import de.infsec.tpl.hash.HashTree.HashAlgorithm;
+import de.infsec.tpl.hash.HashTree.Node;
+import de.infsec.tpl.utils.Pair;
+
+
+/**
+ * A packed database of {@link LibProfile}s. The index (library name, version, root package) is read
+ * eagerly, while profiles are only deserialized on demand. For each profile the store keeps the sorted
+ * 64-bit prefixes of all its package and class hashes, which are memory-mapped and allow to rule out
+ * profiles that cannot match an app without materializing them.
+ *
+ * File layout:
+ *   header:  magic, format version, source fingerprint
+ *   body:    per profile: hash keys (long[]), serialized profile
+ *   index:   per profile: name, version, root package, keys offset/count, profile offset/length, hash algorithms
+ *   trailer: index offset, magic
+ */
+public class ProfileStore {
+	private static final int MAGIC = 0x4c535053;  // "LSPS"
+	private static final int FORMAT_VERSION = 2;   // version 1 has no hash algorithms, i.e. MD5 only
+	private static final int HEADER_SIZE = 4 + 4 + 8;
+	private static final int TRAILER_SIZE = 8 + 4;
+
+	private final List<Entry> entries;
+	private final long source;
+
+	/**
+	 * An index entry of a single library profile
+	 */
+	public static class Entry {
+		public final String name;
+		public final String version;
+		public final String rootPackage;   // null, if the library has multiple root packages
+		public final Set<HashAlgorithm> hashAlgorithms;   // algorithms of the profile's hash trees
+
+		// sorted distinct 64-bit prefixes of all package and class hashes
+		private final LongBuffer keys;
+		private final ByteBuffer blob;
+		private final LibProfile profile;
+
+		private Entry(String name, String version, String rootPackage, Set<HashAlgorithm> hashAlgorithms, LongBuffer keys, ByteBuffer blob, LibProfile profile) {
+			this.name = name;
+			this.version = version;
+			this.rootPackage = rootPackage;
+			this.hashAlgorithms = Collections.unmodifiableSet(hashAlgorithms);
+			this.keys = keys;
+			this.blob = blob;
+			this.profile = profile;
+		}
+
+		public Pair<String,String> getLibIdentifier() {
+			return new Pair<String,String>(name, version);
+		}
+
+		/**
+		 * Checks whether this profile can possibly match an app, i.e. whether any of its package or class
+		 * hashes is contained in the app. Profiles that share no hash have no full and no partial match.
+		 * @param appFilter  the {@link KeyFilter} of the app keys
+		 * @return  false, if the profile cannot match the app, true otherwise
+		 */
+		public boolean mayMatch(KeyFilter appFilter) {
+			// a library without packages matches any app
+			if (keys.limit() == 0)
+				return true;
+
+			for (int i = 0; i < keys.limit(); i++) {
+				if (appFilter.contains(keys.get(i)))
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Materializes the library profile
+		 * @return  the {@link LibProfile}, a new instance for each call if read from disk
+		 */
+		public LibProfile load() throws IOException, ClassNotFoundException {
+			if (profile != null)
+				return profile;
+
+			try (ObjectInputStream in = new ObjectInputStream(new ByteBufferInputStream(blob.duplicate()))) {
+				return (LibProfile) in.readObject();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + version + ")";
+		}
+	}
+
+	private ProfileStore(List<Entry> entries, long source) {
+		this.entries = Collections.unmodifiableList(entries);
+		this.source = source;
+	}
+
+	/**
+	 * @return the index entries in the order the profiles were stored
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the fingerprint of the profiles the store was built from, as passed to {@link #write(List, File, long)}
+	 */
+	public long getSource() {
+		return source;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Return distinct libraries with their highest version
+	 * @return a {@link Map} containing unique library names -> highest version
+	 */
+	public Map<String,String> getUniqueLibraries() {
+		HashMap<String,String> result = new HashMap<String,String>();
+		for (Entry e: entries)
+			LibProfile.putIfHigherVersion(result, e.name, e.version);
+		return result;
+	}
+
+
+	/**
+	 * @return the hash algorithms of all profiles, app hash trees have to be generated for each of them
+	 */
+	public Set<HashAlgorithm> getHashAlgorithms() {
+		Set<HashAlgorithm> result = EnumSet.noneOf(HashAlgorithm.class);
+		for (Entry e: entries)
+			result.addAll(e.hashAlgorithms);
+		return result;
+	}
+
+
+	/**
+	 * Wraps already loaded profiles, keeping their order
+	 * @param profiles  the list of {@link LibProfile}
+	 * @return an in-memory {@link ProfileStore}
+	 */
+	public static ProfileStore of(List<LibProfile> profiles) {
+		List<Entry> entries = new ArrayList<Entry>();
+		for (LibProfile lp: profiles)
+			entries.add(new Entry(lp.description.name, lp.description.version, lp.packageTree.getRootPackage(), hashAlgorithmsOf(lp), LongBuffer.wrap(keysOf(lp.hashTrees)), null, lp));
+		return new ProfileStore(entries, 0L);
+	}
+
+	/**
+	 * Packs the given profiles into a single file, sorted by {@link LibProfile#comp}.
+	 * The file is written to a temporary file first and then moved to dbFile.
+	 * @param profiles  the list of {@link LibProfile}
+	 * @param dbFile  the database file
+	 * @param source  an arbitrary fingerprint of the profiles, e.g. to detect stale databases
+	 */
+	public static void write(List<LibProfile> profiles, File dbFile, long source) throws IOException {
+		List<LibProfile> sorted = new ArrayList<LibProfile>(profiles);
+		Collections.sort(sorted, LibProfile.comp);
+
+		File tmpFile = new File(dbFile.getPath() + ".tmp");
+		long[] keysOffsets = new long[sorted.size()];
+		int[] keysCounts = new int[sorted.size()];
+		long[] blobOffsets = new long[sorted.size()];
+		int[] blobLengths = new int[sorted.size()];
+
+		try (CountingOutputStream cout = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			 DataOutputStream out = new DataOutputStream(cout)) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(source);
+
+			for (int i = 0; i < sorted.size(); i++) {
+				LibProfile lp = sorted.get(i);
+
+				long[] keys = keysOf(lp.hashTrees);
+				keysOffsets[i] = cout.count;
+				keysCounts[i] = keys.length;
+				for (long k: keys)
+					out.writeLong(k);
+
+				ByteArrayOutputStream bout = new ByteArrayOutputStream();
+				try (ObjectOutputStream oout = new ObjectOutputStream(bout)) {
+					oout.writeObject(lp);
+				}
+				blobOffsets[i] = cout.count;
+				blobLengths[i] = bout.size();
+				bout.writeTo(out);
+			}
+
+			long indexOffset = cout.count;
+			out.writeInt(sorted.size());
+			for (int i = 0; i < sorted.size(); i++) {
+				LibProfile lp = sorted.get(i);
+				String rootPackage = lp.packageTree.getRootPackage();
+
+				out.writeUTF(lp.description.name);
+				out.writeUTF(lp.description.version);
+				out.writeBoolean(rootPackage != null);
+				out.writeUTF(rootPackage == null? "" : rootPackage);
+				out.writeLong(keysOffsets[i]);
+				out.writeInt(keysCounts[i]);
+				out.writeLong(blobOffsets[i]);
+				out.writeInt(blobLengths[i]);
+
+				Set<HashAlgorithm> algorithms = hashAlgorithmsOf(lp);
+				out.writeByte(algorithms.size());
+				for (HashAlgorithm algorithm: algorithms)
+					out.writeUTF(algorithm.name());
+			}
+
+			out.writeLong(indexOffset);
+			out.writeInt(MAGIC);
+		}
+
+		if (cannotMap(tmpFile.length())) {
+			tmpFile.delete();
+			throw new IOException("Profile database exceeds " + Integer.MAX_VALUE + " bytes");
+		}
+
+		Files.move(tmpFile.toPath(), dbFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Opens a packed profile database. The file is memory-mapped, only the index is read.
+	 * @param dbFile  the database file, as written by {@link #write(List, File, long)}
+	 * @return the {@link ProfileStore}
+	 * @throws IOException if the file cannot be read or is not a valid profile database
+	 */
+	public static ProfileStore open(File dbFile) throws IOException {
+		MappedByteBuffer buf;
+		try (FileChannel channel = FileChannel.open(dbFile.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE + TRAILER_SIZE || cannotMap(channel.size()))
+				throw new IOException("Invalid profile database: " + dbFile);
+
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buf.getInt(0) != MAGIC || buf.getInt(buf.limit() - 4) != MAGIC)
+			throw new IOException("Invalid profile database: " + dbFile);
+		int formatVersion = buf.getInt(4);
+		if (formatVersion < 1 || formatVersion > FORMAT_VERSION)
+			throw new IOException("Unsupported profile database version " + buf.getInt(4) + ": " + dbFile);
+
+		long source = buf.getLong(8);
+		int indexOffset = (int) buf.getLong(buf.limit() - TRAILER_SIZE);
+
+		ByteBuffer index = buf.duplicate();
+		index.position(indexOffset);
+		DataInputStream in = new DataInputStream(new ByteBufferInputStream(index));
+
+		int count = in.readInt();
+		List<Entry> entries = new ArrayList<Entry>(count);
+		for (int i = 0; i < count; i++) {
+			String name = in.readUTF();
+			String version = in.readUTF();
+			boolean hasRootPackage = in.readBoolean();
+			String rootPackage = in.readUTF();
+			int keysOffset = (int) in.readLong();
+			int keysCount = in.readInt();
+			int blobOffset = (int) in.readLong();
+			int blobLength = in.readInt();
+
+			Set<HashAlgorithm> algorithms = EnumSet.noneOf(HashAlgorithm.class);
+			if (formatVersion < 2)
+				algorithms.add(HashAlgorithm.MD5);
+			else {
+				for (int n = in.readUnsignedByte(); n > 0; n--) {
+					String algorithm = in.readUTF();
+					try {
+						algorithms.add(HashAlgorithm.valueOf(algorithm));
+					} catch (IllegalArgumentException e) { /* unknown algorithm, cannot be matched anyway */ }
+				}
+			}
+
+			entries.add(new Entry(name, version, hasRootPackage? rootPackage : null, algorithms,
+					slice(buf, keysOffset, keysCount * 8).asLongBuffer(), slice(buf, blobOffset, blobLength), null));
+		}
+
+		return new ProfileStore(entries, source);
+	}
+
+	/**
+	 * Computes the lookup keys of the given hash trees, i.e. the first 64 bits of every package and class hash.
+	 * Truncated keys may collide, which only makes {@link Entry#mayMatch(KeyFilter)} more permissive.
+	 * @param hashTrees  a list of {@link HashTree}
+	 * @return the sorted, distinct keys
+	 */
+	public static long[] keysOf(List<HashTree> hashTrees) {
+		int n = 0;
+		for (HashTree ht: hashTrees) {
+			for (Node pn: ht.getPackageNodes())
+				n += 1 + pn.numberOfChilds();
+		}
+
+		long[] keys = new long[n];
+		int i = 0;
+		for (HashTree ht: hashTrees) {
+			for (Node pn: ht.getPackageNodes()) {
+				keys[i++] = key(pn.hash);
+				for (Node cn: pn.childs)
+					keys[i++] = key(cn.hash);
+			}
+		}
+
+		Arrays.sort(keys);
+		int distinct = 0;
+		for (int j = 0; j < keys.length; j++) {
+			if (distinct == 0 || keys[j] != keys[distinct-1])
+				keys[distinct++] = keys[j];
+		}
+		return Arrays.copyOf(keys, distinct);
+	}
+
+	private static Set<HashAlgorithm> hashAlgorithmsOf(LibProfile lp) {
+		Set<HashAlgorithm> result = EnumSet.noneOf(HashAlgorithm.class);
+		for (HashTree ht: lp.hashTrees)
+			result.add(ht.getConfig().hashAlgorithm);
+		return result;
+	}
+
+	private static long key(byte[] hash) {
+		long k = 0L;
+		for (int i = 0; i < 8; i++)
+			k = (k << 8) | (i < hash.length? hash[i] & 0xff : 0);
+		return k;
+	}
+
+	private static boolean cannotMap(long size) {
+		return size > Integer.MAX_VALUE;
+	}
+
+	private static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+		ByteBuffer dup = buf.duplicate();
+		dup.position(offset);
+		dup.limit(offset + length);
+		return dup.slice();
+	}
+
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0L;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buf;
+
+		ByteBufferInputStream(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		@Override
+		public int read() {
+			return buf.hasRemaining()? buf.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!buf.hasRemaining())
+				return -1;
+
+			len = Math.min(len, buf.remaining());
+			buf.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buf.remaining();
+		}
+	}
+}
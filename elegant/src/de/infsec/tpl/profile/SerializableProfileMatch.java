@@ -53,8 +53,8 @@ public class SerializableProfileMatch implements Serializable {
 		this.libVersion = pm.lib.description.version;
 		this.isLibObfuscated = pm.isLibObfuscated();
 		this.libRootPackagePresent = pm.libRootPackagePresent;
-		this.includesSecurityVulnerability = pm.lib.description.comment.contains("[SECURITY]");
-		this.includesSecurityVulnerabilityFix = pm.lib.description.comment.contains("[SECURITY-FIX]");
+		this.includesSecurityVulnerability = pm.lib.description.comment != null && pm.lib.description.comment.contains("[SECURITY]");
+		this.includesSecurityVulnerabilityFix = pm.lib.description.comment != null && pm.lib.description.comment.contains("[SECURITY-FIX]");
 		
 		if (pm.doAllConfigsMatch()) {
 			this.matchLevel = MATCH_ALL_CONFIGS;
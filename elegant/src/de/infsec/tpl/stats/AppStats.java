@@ -33,10 +33,14 @@ public class AppStats {
     public PackageTree pTree;
     public List<HashTree> appHashTrees;
 
-    public List<LibProfile> profiles;
-    public List<ProfileMatch> pMatches;
+    public List<LibProfile> profiles;     // profiles matched, i.e. without the rejected ones, which are never loaded
+    public List<ProfileMatch> pMatches;   // matches of the profiles above, profiles checked = profiles + rejectedProfiles
     public Set<String> packageMatches;
 
+    public int rejectedProfiles;      // profiles rejected before matching, as they share no hash with the app
+    public int admissionMisses = -1;  // rejected profiles that match anyway, -1 if not verified
+    public int hierarchyMismatches = -1;  // packages hashed differently from Soot and WALA, -1 if not verified
+
     public long processingTime;
 
 
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.iface.ClassDef;
+
+import soot.ArrayType;
+import soot.BooleanType;
+import soot.ByteType;
+import soot.CharType;
+import soot.DoubleType;
+import soot.FloatType;
+import soot.IntType;
+import soot.LongType;
+import soot.RefType;
+import soot.Scene;
+import soot.ShortType;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Type;
+import soot.VoidType;
+
+
+/**
+ * View on the app classes of a Soot {@link Scene} that answers class lookups the way a WALA class hierarchy
+ * of the app, with the android jars as primordial classes, does. Profiles generated from this view hash
+ * like the ones generated from the WALA class hierarchy, without parsing the apk a second time.
+ */
+public class SootHierarchy {
+	// access flags, as in dex and class files
+	private static final int ACC_BRIDGE = 0x0040;
+	private static final int ACC_SYNTHETIC = 0x1000;
+
+	// dex files of an apk, i.e. classes.dex, classes2.dex, ...
+	private static final Pattern DEX_ENTRY = Pattern.compile("classes\\d*\\.dex");
+
+	private final Scene scene;
+
+	// class names of the android jars
+	private final Set<String> platformClassNames;
+
+	// app classes the class hierarchy contains, i.e. whose superclasses can be resolved, in dex order
+	private final Map<String, SootClass> appClasses = new LinkedHashMap<String, SootClass>();
+
+	// false if some app classes are not in the scene
+	private boolean complete = true;
+
+
+	/**
+	 * @param scene  the Soot {@link Scene} the app is loaded into
+	 * @param dexClassNames  the fully-qualified names of the classes in the app's dex files
+	 * @param platformClassNames  the fully-qualified names of the classes in the android jars
+	 */
+	public SootHierarchy(Scene scene, Collection<String> dexClassNames, Set<String> platformClassNames) {
+		this.scene = scene;
+		this.platformClassNames = platformClassNames;
+
+		Map<String, SootClass> loaded = new LinkedHashMap<String, SootClass>();
+		for (String name: dexClassNames) {
+			if (loaded.containsKey(name))
+				continue;
+
+			SootClass sc = scene.containsClass(name)? scene.getSootClass(name) : null;
+			if (sc == null || sc.isPhantom()) {
+				complete = false;
+				continue;
+			}
+			loaded.put(name, sc);
+		}
+
+		// like WALA, skip classes whose superclasses cannot be resolved
+		Map<String, Boolean> resolvable = new HashMap<String, Boolean>();
+		for (SootClass sc: loaded.values()) {
+			if (hasResolvableSuperclasses(sc, loaded, resolvable))
+				appClasses.put(sc.getName(), sc);
+		}
+	}
+
+	/**
+	 * Creates the view for an apk loaded into a scene. The class names of every dex file of the apk are read
+	 * from the apk itself rather than from Soot, which may have skipped secondary dex files depending on its
+	 * options, so that the view is incomplete exactly if the scene misses some of them.
+	 * @param scene  the Soot {@link Scene} the apk is loaded into
+	 * @param apk  the apk file
+	 * @param androidJarsPathes  the android jars
+	 * @return a {@link SootHierarchy}
+	 * @throws IOException
+	 */
+	public static SootHierarchy make(Scene scene, File apk, List<String> androidJarsPathes) throws IOException {
+		List<String> dexClassNames = new ArrayList<String>();
+		try (ZipFile zip = new ZipFile(apk)) {
+			for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
+				ZipEntry entry = entries.nextElement();
+				if (!DEX_ENTRY.matcher(entry.getName()).matches())
+					continue;
+
+				DexBackedDexFile dex = new DexBackedDexFile(Opcodes.getDefault(), readEntry(zip, entry));
+				for (ClassDef cd: dex.getClasses())
+					dexClassNames.add(Utils.convertToFullClassName(cd.getType()));
+			}
+		}
+
+		Set<String> platformClassNames = new HashSet<String>();
+		for (String path: androidJarsPathes) {
+			try (ZipFile jar = new ZipFile(path)) {
+				for (Enumeration<? extends ZipEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+					String name = entries.nextElement().getName();
+					if (name.endsWith(".class"))
+						platformClassNames.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+				}
+			}
+		}
+
+		return new SootHierarchy(scene, dexClassNames, platformClassNames);
+	}
+
+	private static byte[] readEntry(ZipFile zip, ZipEntry entry) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(entry.getSize() > 0? (int) entry.getSize() : 1 << 16);
+		try (InputStream in = zip.getInputStream(entry)) {
+			byte[] buf = new byte[1 << 16];
+			for (int n; (n = in.read(buf)) > 0; )
+				out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	private boolean hasResolvableSuperclasses(SootClass sc, Map<String, SootClass> loaded, Map<String, Boolean> resolvable) {
+		List<String> chain = new ArrayList<String>();
+		chain.add(sc.getName());
+
+		boolean result;
+		SootClass c = sc;
+		while (true) {
+			if (!c.hasSuperclass()) {
+				result = c.getName().equals("java.lang.Object");
+				break;
+			}
+
+			// superclasses are looked up parent-first, i.e. in the android jars first
+			String superName = c.getSuperclass().getName();
+			if (platformClassNames.contains(superName)) {
+				result = true;
+				break;
+			}
+
+			Boolean known = resolvable.get(superName);
+			if (known != null) {
+				result = known;
+				break;
+			}
+
+			c = loaded.get(superName);
+			if (c == null || chain.contains(superName)) {
+				result = false;
+				break;
+			}
+			chain.add(superName);
+		}
+
+		for (String name: chain)
+			resolvable.put(name, result);
+		return result;
+	}
+
+
+	/**
+	 * @return false, if some classes of the dex files are not in the scene, e.g. for multi-dex apks whose
+	 *         secondary dex files were not loaded
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return the classes of the app, as iterated in a WALA class hierarchy by the application loader
+	 */
+	public Collection<SootClass> getAppClasses() {
+		return appClasses.values();
+	}
+
+	/**
+	 * Equivalent of {@link WalaUtils#isAppClass(com.ibm.wala.classLoader.IClass)}
+	 * @param sc  an app class, see {@link #getAppClasses()}
+	 * @return true, if it is an app class
+	 */
+	public boolean isAppClass(SootClass sc) {
+		String clazzName = getClassName(sc.getName());
+
+		// Normalization:
+		// filter empty dummy classes
+		boolean isEmptyInnerClass = clazzName.contains("$")
+									&& WalaUtils.isAnonymousInnerClass(sc.getName())
+									&& (sc.getMethodCount() == 0 ||
+									   (sc.getMethodCount() == 1 && sc.getMethods().get(0).isStaticInitializer())
+									&& getFieldCount(sc, false) == 0
+									&& getFieldCount(sc, true) == 0
+									&& getResolvableInterfaceCount(sc) == 0);
+
+		return !isAndroidResourceClass(clazzName) && !isEmptyInnerClass && (sc.getModifiers() & ACC_SYNTHETIC) == 0;
+	}
+
+	/**
+	 * Equivalent of looking up an application type in the WALA class hierarchy (parent-first) and checking
+	 * it with {@link WalaUtils#isAppClass(com.ibm.wala.classLoader.IClass)}
+	 * @param type  a type of an app method signature
+	 * @return true, if the type is an app class or cannot be resolved
+	 */
+	public boolean isAppType(Type type) {
+		if (type instanceof RefType) {
+			String name = ((RefType) type).getClassName();
+			if (platformClassNames.contains(name))
+				return false;
+
+			SootClass sc = appClasses.get(name);
+			return sc == null || isAppClass(sc);
+		}
+
+		if (type instanceof ArrayType && ((ArrayType) type).baseType instanceof RefType) {
+			String name = ((RefType) ((ArrayType) type).baseType).getClassName();
+			if (platformClassNames.contains(name))
+				return false;
+			if (!appClasses.containsKey(name))
+				return true;
+
+			// arrays of app classes are app classes without methods, which are checked by name only
+			String arrayName = getTypeName(type);
+			String clazzName = getClassName(arrayName.replace('/', '.'));
+			boolean isEmptyInnerClass = clazzName.contains("$") && WalaUtils.isAnonymousInnerClass(Utils.convertToFullClassName(arrayName));
+			return !isAndroidResourceClass(clazzName) && !isEmptyInnerClass;
+		}
+
+		// primitive types and arrays of them are primordial
+		return false;
+	}
+
+	/**
+	 * @param type  a type
+	 * @return true, if WALA references this type with the application loader in app method signatures
+	 */
+	public static boolean isAppLoaderType(Type type) {
+		return type instanceof RefType || (type instanceof ArrayType && ((ArrayType) type).baseType instanceof RefType);
+	}
+
+	/**
+	 * Equivalent of {@link WalaUtils#lookupClass(com.ibm.wala.ipa.cha.IClassHierarchy, String)}, i.e. parent-first
+	 * @param clazzName  a fully-qualified class name
+	 * @return the class, or null if it cannot be resolved
+	 */
+	public SootClass lookupClass(String clazzName) {
+		if (platformClassNames.contains(clazzName)) {
+			SootClass sc = scene.containsClass(clazzName)? scene.getSootClass(clazzName) : null;
+			return sc == null || sc.isPhantom()? null : sc;
+		}
+		return appClasses.get(clazzName);
+	}
+
+	/**
+	 * Equivalent of {@link WalaUtils#isInnerClass(com.ibm.wala.classLoader.IClass)}
+	 * @param sc  a class
+	 * @return true, if it is an inner class by name
+	 */
+	public static boolean isInnerClass(SootClass sc) {
+		return getClassName(sc.getName()).contains("$");
+	}
+
+	/**
+	 * @param m  a method
+	 * @return true, if this is a bridge or synthetic method
+	 */
+	public static boolean isBridgeOrSynthetic(SootMethod m) {
+		return (m.getModifiers() & (ACC_BRIDGE | ACC_SYNTHETIC)) != 0;
+	}
+
+	/**
+	 * @param type  a type
+	 * @return the name of the type as WALA prints it, i.e. in bytecode notation without trailing ';'
+	 */
+	public static String getTypeName(Type type) {
+		if (type instanceof ArrayType) {
+			ArrayType at = (ArrayType) type;
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < at.numDimensions; i++)
+				sb.append('[');
+			return sb.append(getTypeName(at.baseType)).toString();
+		}
+		if (type instanceof RefType)
+			return "L" + ((RefType) type).getClassName().replace('.', '/');
+		if (type instanceof BooleanType) return "Z";
+		if (type instanceof ByteType) return "B";
+		if (type instanceof CharType) return "C";
+		if (type instanceof ShortType) return "S";
+		if (type instanceof IntType) return "I";
+		if (type instanceof LongType) return "J";
+		if (type instanceof FloatType) return "F";
+		if (type instanceof DoubleType) return "D";
+		if (type instanceof VoidType) return "V";
+		return type.toString();
+	}
+
+	/**
+	 * @param m  a method
+	 * @return the signature of the method as WALA prints it, e.g. com.foo.Bar.baz(Ljava/lang/String;)V
+	 */
+	public static String getSignature(SootMethod m) {
+		StringBuilder sb = new StringBuilder(m.getDeclaringClass().getName());
+		sb.append('.').append(m.getName()).append('(');
+		for (Type t: m.getParameterTypes())
+			sb.append(getDescriptor(t));
+		return sb.append(')').append(getDescriptor(m.getReturnType())).toString();
+	}
+
+	private static String getDescriptor(Type type) {
+		// class types, also as array elements, end with ';'
+		return isAppLoaderType(type)? getTypeName(type) + ";" : getTypeName(type);
+	}
+
+	private static String getClassName(String clazzName) {
+		// strip package name
+		return clazzName.substring(clazzName.lastIndexOf('.') + 1);
+	}
+
+	private static boolean isAndroidResourceClass(String clazzName) {
+		// match R and BuildConfig class and their inner classes
+		return clazzName.equals("R") || clazzName.startsWith("R$") || clazzName.equals("BuildConfig");
+	}
+
+	private static int getFieldCount(SootClass sc, boolean statics) {
+		int count = 0;
+		for (SootField f: sc.getFields()) {
+			if (f.isStatic() == statics)
+				count++;
+		}
+		return count;
+	}
+
+	private int getResolvableInterfaceCount(SootClass sc) {
+		int count = 0;
+		for (SootClass i: sc.getInterfaces()) {
+			if (platformClassNames.contains(i.getName()) || appClasses.containsKey(i.getName()))
+				count++;
+		}
+		return count;
+	}
+}
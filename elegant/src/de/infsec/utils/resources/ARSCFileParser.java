@@ -10,8 +10,15 @@
  ******************************************************************************/
 package de.infsec.utils.resources;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -22,7 +29,8 @@ import java.util.Set;
 /**
  * Parser for reading out the contents of Android's resource.arsc file.
  * Structure declarations and comments taken from the Android source
- * code and ported from C to Java.
+ * code and ported from C to Java. All structures are decoded in place
+ * from a little-endian {@link ByteBuffer}, e.g. a memory-mapped file.
  * 
  * @author Steven Arzt
  */
@@ -948,6 +956,20 @@ public class ARSCFileParser extends AbstractResourceParser {
 	}
 
 	public void parse(String apkFile) throws IOException {
+		// resources.arsc is usually stored uncompressed, it can then be parsed
+		// in place from the mapped apk file
+		ByteBuffer storedData = mapStoredEntry(new File(apkFile), "resources.arsc");
+		if (storedData != null) {
+			try {
+				parse(storedData);
+			}
+			catch (IOException ex) {
+				System.err.println("Could not read resource file: " + ex.getMessage());
+				ex.printStackTrace();
+			}
+			return;
+		}
+
 		this.handleAndroidResourceFiles(apkFile, null, new IResourceHandler() {
 			
 			@Override
@@ -970,9 +992,51 @@ public class ARSCFileParser extends AbstractResourceParser {
 		readResourceHeader(stream);
 	}
 
+	/**
+	 * Parses a resources.arsc file, which is memory-mapped instead of read
+	 * @param arscFile The resources.arsc file
+	 * @throws IOException Thrown if the file cannot be mapped or is broken
+	 */
+	public void parseResourceFile(File arscFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(arscFile.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Resource file too large: " + arscFile);
+			parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Parses the contents of a resources.arsc file in place, i.e. without
+	 * copying the resource table.
+	 * @param buffer The buffer holding the resources.arsc file from its
+	 * position to its limit, e.g. a mapped file or a stored zip entry
+	 * @throws IOException Thrown if the resource file is broken
+	 */
+	public void parse(ByteBuffer buffer) throws IOException {
+		ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+		ResTable_Header resourceHeader = new ResTable_Header();
+		int offset = readChunkHeader(resourceHeader.header, data, 0);
+		resourceHeader.packageCount = readUInt32(data, offset);
+		offset += 4;
+		if (DEBUG)
+			System.out.println("Package Groups (" + resourceHeader.packageCount + ")");
+
+		// Do we have any packages to read?
+		int remainingSize = resourceHeader.header.size - resourceHeader.header.headerSize;
+		if (remainingSize <= 0)
+			return;
+
+		if (remainingSize > data.limit() - offset) {
+			System.err.println("Could not read block from resource file");
+			return;
+		}
+		data.position(offset);
+		data.limit(offset + remainingSize);
+		readResourceTable(data.slice().order(ByteOrder.LITTLE_ENDIAN));
+	}
+
 	private void readResourceHeader(InputStream stream) throws IOException {
-		final int BLOCK_SIZE = 2048;
-		
 		ResTable_Header resourceHeader = new ResTable_Header();
 		readChunkHeader(stream, resourceHeader.header);
 		resourceHeader.packageCount = readUInt32(stream);
@@ -988,15 +1052,23 @@ public class ARSCFileParser extends AbstractResourceParser {
 		byte[] remainingData = new byte[remainingSize];
 		int totalBytesRead = 0;
 		while (totalBytesRead < remainingSize) {
-			byte[] block = new byte[Math.min(BLOCK_SIZE, remainingSize - totalBytesRead)];
-			int bytesRead = stream.read(block);
+			int bytesRead = stream.read(remainingData, totalBytesRead, remainingSize - totalBytesRead);
 			if (bytesRead < 0) {
 				System.err.println("Could not read block from resource file");
 				return;
 			}
-			System.arraycopy(block, 0, remainingData, totalBytesRead, bytesRead);
 			totalBytesRead += bytesRead;
 		}
+		readResourceTable(ByteBuffer.wrap(remainingData).order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+	/**
+	 * Reads the chunks following the resource table header
+	 * @param remainingData The chunks, in little-endian byte order
+	 * @throws IOException Thrown if an error occurs during read
+	 */
+	private void readResourceTable(ByteBuffer remainingData) throws IOException {
+		int remainingSize = remainingData.limit();
 		int offset = 0;
 		int beforeBlock = 0;
 		
@@ -1004,7 +1076,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 		int packageCtr = 0;
 		Map<Integer, String> keyStrings = new HashMap<Integer, String>();
 		Map<Integer, String> typeStrings = new HashMap<Integer, String>();
-		while (offset < remainingData.length - 1) {
+		while (offset < remainingData.limit() - 1) {
 			beforeBlock = offset;
 			ResChunk_Header nextChunkHeader = new ResChunk_Header();
 			offset = readChunkHeader(nextChunkHeader, remainingData, offset);
@@ -1283,7 +1355,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readComplexValue
 			(ResTable_Map map,
-			byte[] remainingData,
+			ByteBuffer remainingData,
 			int offset) throws IOException {
 		map.name = readUInt32(remainingData, offset);
 		offset += 4;
@@ -1293,7 +1365,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readValue
 			(Res_Value val,
-			byte[] remainingData,
+			ByteBuffer remainingData,
 			int offset) throws IOException {
 		int initialOffset = offset;
 		
@@ -1317,7 +1389,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 		return offset;
 	}
 
-	private ResTable_Entry readEntryTable(byte[] data, int offset) throws IOException {
+	private ResTable_Entry readEntryTable(ByteBuffer data, int offset) throws IOException {
 		// The exact type of entry depends on the size
 		int size = readUInt16(data, offset);
 		offset += 2;
@@ -1351,7 +1423,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readTypeTable
 			(ResTable_Type typeTable,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		typeTable.id = readUInt8(data, offset);
 		offset += 1;
@@ -1377,7 +1449,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readConfigTable
 			(ResTable_Config config,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		config.size = readUInt32(data, offset);
 		offset += 4;
@@ -1388,12 +1460,12 @@ public class ARSCFileParser extends AbstractResourceParser {
 		config.mnc = readUInt16(data, offset);
 		offset += 2;
 
-		config.language[0] = (char) data[offset];
-		config.language[1] = (char) data[offset + 1];
+		config.language[0] = (char) data.get(offset);
+		config.language[1] = (char) data.get(offset + 1);
 		offset += 2;
 		
-		config.country[0] = (char) data[offset];
-		config.country[1] = (char) data[offset + 1];
+		config.country[0] = (char) data.get(offset);
+		config.country[1] = (char) data.get(offset + 1);
 		offset += 2;
 		
 		config.orientation = readUInt8(data, offset);
@@ -1443,7 +1515,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readTypeSpecTable
 			(ResTable_TypeSpec typeSpecTable,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		typeSpecTable.id = readUInt8(data, offset);
 		offset += 1;
@@ -1465,7 +1537,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 	}
 
 	private int readStringTable
-			(byte[] remainingData,
+			(ByteBuffer remainingData,
 			int offset,
 			int blockStart,
 			ResStringPool_Header stringPoolHeader,
@@ -1489,7 +1561,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int parsePackageTable
 			(ResTable_Package packageTable,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		packageTable.id = readUInt32(data, offset);
 		offset += 4;
@@ -1518,29 +1590,40 @@ public class ARSCFileParser extends AbstractResourceParser {
 		return offset;
 	}
 
-	private String readString(byte[] remainingData, int stringIdx) throws IOException {
+	private String readString(ByteBuffer remainingData, int stringIdx) throws IOException {
 		int strLen = readUInt16(remainingData, stringIdx);
 		if (strLen == 0)
 			return "";
 		stringIdx += 2;
-		byte[] str = new byte[strLen * 2];
-		System.arraycopy(remainingData, stringIdx, str, 0, strLen * 2);
-		return new String(remainingData, stringIdx, strLen * 2, "UTF-16LE");
+		return decodeString(remainingData, stringIdx, strLen * 2, StandardCharsets.UTF_16LE);
 	}
 
-	private String readStringUTF8(byte[] remainingData, int stringIdx) throws IOException {
+	private String readStringUTF8(ByteBuffer remainingData, int stringIdx) throws IOException {
 		// skip the length, will usually be 0x1A1A
 		// int strLen = readUInt16(remainingData, stringIdx);
 		// the length here is somehow weird
 		int strLen = readUInt8(remainingData, stringIdx + 1);
 		stringIdx += 2;
-		String str = new String(remainingData, stringIdx, strLen, "UTF-8");
-		return str;
+		return decodeString(remainingData, stringIdx, strLen, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decodes a string directly from the buffer, malformed input is replaced
+	 * like by the {@link String} constructors
+	 */
+	private String decodeString(ByteBuffer data, int offset, int length, Charset charset) {
+		if (offset < 0 || length < 0 || offset + length > data.limit())
+			throw new IndexOutOfBoundsException("String out of bounds: " + offset + "+" + length);
+
+		ByteBuffer str = data.duplicate();
+		str.position(offset);
+		str.limit(offset + length);
+		return charset.decode(str).toString();
 	}
 
 	private int parseStringPoolHeader
 			(ResStringPool_Header stringPoolHeader,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		stringPoolHeader.stringCount = readUInt32(data, offset);
 		stringPoolHeader.styleCount = readUInt32(data, offset + 4);
@@ -1566,7 +1649,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 			ResChunk_Header nextChunkHeader) throws IOException {
 		byte[] header = new byte[8];
 		stream.read(header);
-		readChunkHeader(nextChunkHeader, header, 0);
+		readChunkHeader(nextChunkHeader, ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN), 0);
 	}
 
 	/**
@@ -1579,7 +1662,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 	 */
 	private int readChunkHeader
 			(ResChunk_Header nextChunkHeader,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		nextChunkHeader.type = readUInt16(data, offset);
 		offset += 2;
@@ -1593,30 +1676,22 @@ public class ARSCFileParser extends AbstractResourceParser {
 		return offset;
 	}
 
-	private int readUInt8(byte[] uint16, int offset) throws IOException {
-		int b0 = uint16[0 + offset] & 0x000000FF;
-		return b0;
+	private int readUInt8(ByteBuffer data, int offset) throws IOException {
+		return data.get(offset) & 0x000000FF;
 	}
 
-	private int readUInt16(byte[] uint16, int offset) throws IOException {
-		int b0 = uint16[0 + offset] & 0x000000FF;
-		int b1 = uint16[1 + offset] & 0x000000FF;
-		return (b1 << 8) + b0;
+	private int readUInt16(ByteBuffer data, int offset) throws IOException {
+		return data.getShort(offset) & 0x0000FFFF;
 	}
 
 	private int readUInt32(InputStream stream) throws IOException {
 		byte[] uint32 = new byte[4];
 		stream.read(uint32);
-		return readUInt32(uint32, 0);
+		return readUInt32(ByteBuffer.wrap(uint32).order(ByteOrder.LITTLE_ENDIAN), 0);
 	}
 
-	private int readUInt32(byte[] uint32, int offset) throws IOException {
-		int b0 = uint32[0 + offset] & 0x000000FF;
-		int b1 = uint32[1 + offset] & 0x000000FF;
-		int b2 = uint32[2 + offset] & 0x000000FF;
-		int b3 = uint32[3 + offset] & 0x000000FF;
-		return (Math.abs(b3) << 24) + (Math.abs(b2) << 16)
-				+ (Math.abs(b1) << 8) + Math.abs(b0);
+	private int readUInt32(ByteBuffer data, int offset) throws IOException {
+		return data.getInt(offset);
 	}
 	
 	public Map<Integer, String> getGlobalStringPool() {
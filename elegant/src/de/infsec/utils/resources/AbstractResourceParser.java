@@ -11,6 +11,12 @@
 package de.infsec.utils.resources;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Enumeration;
 import java.util.Set;
 import java.util.zip.ZipEntry;
@@ -23,6 +29,11 @@ import java.util.zip.ZipFile;
  */
 public abstract class AbstractResourceParser {
 
+	private static final int ZIP_LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int ZIP_CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int ZIP_END_SIGNATURE = 0x06054b50;
+	private static final int ZIP_END_SIZE = 22;
+
 	/**
 	 * Opens the given apk file and provides the given handler with a stream for
 	 * accessing the contained resource manifest files
@@ -67,4 +78,88 @@ public abstract class AbstractResourceParser {
 		}
 	}
 
+	/**
+	 * Maps the given apk file and locates an entry that is stored without
+	 * compression, e.g. resources.arsc, so that it can be parsed in place.
+	 * @param apk The apk file
+	 * @param entryName The name of the entry in the apk file
+	 * @return The data of the entry, or null if the apk file does not
+	 * contain the entry, the entry is compressed or encrypted, or the apk
+	 * file cannot be mapped, e.g. since it uses Zip64 extensions
+	 * 
+	 * @throws IOException Thrown if the apk file cannot be read
+	 */
+	protected ByteBuffer mapStoredEntry(File apk, String entryName) throws IOException {
+		if (!apk.isFile())
+			return null;
+
+		ByteBuffer zip;
+		try (FileChannel channel = FileChannel.open(apk.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < ZIP_END_SIZE || channel.size() > Integer.MAX_VALUE)
+				return null;
+			zip = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		// Find the end of central directory record, followed by a comment of
+		// at most 64k
+		int end = -1;
+		for (int i = zip.limit() - ZIP_END_SIZE; i >= Math.max(0, zip.limit() - ZIP_END_SIZE - 0xFFFF); i--) {
+			if (zip.getInt(i) == ZIP_END_SIGNATURE) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0)
+			return null;
+
+		int entryCount = zip.getShort(end + 10) & 0xFFFF;
+		long offset = zip.getInt(end + 16) & 0xFFFFFFFFL;
+		byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+
+		for (int i = 0; i < entryCount; i++) {
+			if (offset + 46 > zip.limit() || zip.getInt((int) offset) != ZIP_CENTRAL_HEADER_SIGNATURE)
+				return null;
+			int pos = (int) offset;
+			int nameLength = zip.getShort(pos + 28) & 0xFFFF;
+			int extraLength = zip.getShort(pos + 30) & 0xFFFF;
+			int commentLength = zip.getShort(pos + 32) & 0xFFFF;
+			offset += 46 + nameLength + extraLength + commentLength;
+			if (offset > zip.limit())
+				return null;
+
+			if (nameLength != name.length || !matches(zip, pos + 46, name))
+				continue;
+
+			int flags = zip.getShort(pos + 8) & 0xFFFF;
+			int method = zip.getShort(pos + 10) & 0xFFFF;
+			long compressedSize = zip.getInt(pos + 20) & 0xFFFFFFFFL;
+			long size = zip.getInt(pos + 24) & 0xFFFFFFFFL;
+			long localOffset = zip.getInt(pos + 42) & 0xFFFFFFFFL;
+			if ((flags & 0x1) != 0 || method != 0 || compressedSize != size)
+				return null;
+
+			// The data follows the local header, whose extra field may differ
+			// from the one in the central directory
+			if (localOffset + 30 > zip.limit() || zip.getInt((int) localOffset) != ZIP_LOCAL_HEADER_SIGNATURE)
+				return null;
+			long dataOffset = localOffset + 30 + (zip.getShort((int) localOffset + 26) & 0xFFFF)
+					+ (zip.getShort((int) localOffset + 28) & 0xFFFF);
+			if (dataOffset + size > zip.limit())
+				return null;
+
+			zip.position((int) dataOffset);
+			zip.limit((int) (dataOffset + size));
+			return zip.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return null;
+	}
+
+	private static boolean matches(ByteBuffer buffer, int offset, byte[] bytes) {
+		for (int i = 0; i < bytes.length; i++) {
+			if (buffer.get(offset + i) != bytes[i])
+				return false;
+		}
+		return true;
+	}
+
 }
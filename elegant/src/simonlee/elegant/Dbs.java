@@ -22,6 +22,12 @@ public class Dbs {
     // android callbacks used by soot-infoflow
     public static final String LIB_PROFILES_DIR
             = getResources(Target.LIB_SCOUT, "profiles");
+    // packed library profiles, built from LIB_PROFILES_DIR
+    public static final String LIB_PROFILES_DB
+            = getResources(Target.LIB_SCOUT, "profiles.db");
+    // cached library detection results, keyed by apk and profiles
+    public static final String LIB_SCOUT_CACHE_DIR
+            = getResources(Target.LIB_SCOUT, "cache");
 
     public static String getResources(String target, String fileName) {
         return "dbs" + File.separator + target + File.separator + fileName;
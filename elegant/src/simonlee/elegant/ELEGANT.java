@@ -31,6 +31,16 @@ public class ELEGANT {
         public static final String PLATFORMS_PATH = null;
         // optional
         public static final String D3_ALGO = D3AlgoFactory.D3_WHITELIST;
+        // optional
+        public static final boolean CALLGRAPH_ONLY = false;
+        // optional
+        public static final int FINDER_THREADS = Runtime.getRuntime().availableProcessors();
+        // optional
+        public static final int MAX_CALL_CHAINS = Integer.MAX_VALUE;
+        // optional
+        public static final int D3_THREADS = Runtime.getRuntime().availableProcessors();
+        // optional
+        public static final boolean D3_VERIFY = false;
     }
 
     // Builder helps to create an ELEGANT instance more easily
@@ -39,6 +49,11 @@ public class ELEGANT {
         private String  modelsPath    = DEFAULT_OPTS.MODELS_PATH;
         private String  platformsPath = DEFAULT_OPTS.PLATFORMS_PATH;
         private String  d3Algo        = DEFAULT_OPTS.D3_ALGO;
+        private boolean callGraphOnly = DEFAULT_OPTS.CALLGRAPH_ONLY;
+        private int     finderThreads = DEFAULT_OPTS.FINDER_THREADS;
+        private int     maxCallChains = DEFAULT_OPTS.MAX_CALL_CHAINS;
+        private int     d3Threads     = DEFAULT_OPTS.D3_THREADS;
+        private boolean d3Verify      = DEFAULT_OPTS.D3_VERIFY;
 
         public Builder withApkPath(String apkPath) {
             this.apkPath = apkPath;
@@ -60,6 +75,31 @@ public class ELEGANT {
             return this;
         }
 
+        public Builder withCallGraphOnly(boolean callGraphOnly) {
+            this.callGraphOnly = callGraphOnly;
+            return this;
+        }
+
+        public Builder withFinderThreads(int finderThreads) {
+            this.finderThreads = finderThreads;
+            return this;
+        }
+
+        public Builder withMaxCallChains(int maxCallChains) {
+            this.maxCallChains = maxCallChains;
+            return this;
+        }
+
+        public Builder withD3Threads(int d3Threads) {
+            this.d3Threads = d3Threads;
+            return this;
+        }
+
+        public Builder withD3Verify(boolean d3Verify) {
+            this.d3Verify = d3Verify;
+            return this;
+        }
+
         public ELEGANT build() {
             if ("".equals(apkPath)) {
                 throw new RuntimeException(
@@ -70,8 +110,18 @@ public class ELEGANT {
             } else if("".equals(platformsPath)) {
                 throw new RuntimeException(
                         "path to your platforms is missed, remember to use builder.withPlatformsPath(...)");
+            } else if (finderThreads < 1) {
+                throw new RuntimeException(
+                        "finder threads must be positive, remember to use builder.withFinderThreads(...)");
+            } else if (maxCallChains < 1) {
+                throw new RuntimeException(
+                        "max call chains must be positive, remember to use builder.withMaxCallChains(...)");
+            } else if (d3Threads < 1) {
+                throw new RuntimeException(
+                        "d3 threads must be positive, remember to use builder.withD3Threads(...)");
             } else {
-                return new ELEGANT(apkPath, modelsPath, platformsPath, d3Algo);
+                return new ELEGANT(apkPath, modelsPath, platformsPath, d3Algo,
+                        callGraphOnly, finderThreads, maxCallChains, d3Threads, d3Verify);
             }
         }
     }
@@ -131,6 +181,26 @@ public class ELEGANT {
         return environ.getAppPackage();
     }
 
+    public boolean isCallGraphOnly() {
+        return environ.isCallGraphOnly();
+    }
+
+    public int getFinderThreads() {
+        return environ.getFinderThreads();
+    }
+
+    public int getMaxCallChains() {
+        return environ.getMaxCallChains();
+    }
+
+    public int getD3Threads() {
+        return environ.getD3Threads();
+    }
+
+    public boolean isD3Verify() {
+        return environ.isD3Verify();
+    }
+
     // delegate OptParser, parser is a publisher, so delegate it
 
     public Map<String, Object> getOpts() {
@@ -170,9 +240,22 @@ public class ELEGANT {
     }
 
     private ELEGANT(String apkPath, String modelsPath, String platformsPath, String d3Algo) {
+        this(apkPath, modelsPath, platformsPath, d3Algo,
+                DEFAULT_OPTS.CALLGRAPH_ONLY, DEFAULT_OPTS.FINDER_THREADS, DEFAULT_OPTS.MAX_CALL_CHAINS,
+                DEFAULT_OPTS.D3_THREADS, DEFAULT_OPTS.D3_VERIFY);
+    }
+
+    private ELEGANT(String apkPath, String modelsPath, String platformsPath, String d3Algo,
+                    boolean callGraphOnly, int finderThreads, int maxCallChains, int d3Threads,
+                    boolean d3Verify) {
         optParser.putOpt(OptParser.OPT_APK_PATH, apkPath);
         optParser.putOpt(OptParser.OPT_MODELS_PATH, modelsPath);
         optParser.putOpt(OptParser.OPT_PLATFORMS_PATH, platformsPath);
         optParser.putOpt(OptParser.OPT_D3_ALGO, d3Algo);
+        optParser.putOpt(OptParser.OPT_CALLGRAPH_ONLY, callGraphOnly);
+        optParser.putOpt(OptParser.OPT_FINDER_THREADS, finderThreads);
+        optParser.putOpt(OptParser.OPT_MAX_CALL_CHAINS, maxCallChains);
+        optParser.putOpt(OptParser.OPT_D3_THREADS, d3Threads);
+        optParser.putOpt(OptParser.OPT_D3_VERIFY, d3Verify);
     }
 }
@@ -6,6 +6,12 @@ import soot.SootMethod;
 
 public interface AbstractD3Algo {
 
+    /**
+     * prepare is called once the soot scene is built, before any of the checks, so that algorithms
+     * analysing the scene do it here, on a single thread
+     */
+    default void prepare() {}
+
     /**
      * is3rdPartyLibClass checks whether c is a 3rd party class
      * @param c a soot class
@@ -5,9 +5,17 @@ import soot.SootField;
 import soot.SootMethod;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public abstract class D3AbstractWhiteList implements AbstractD3Algo {
 
+    // whiteListTrie is built lazily from the white list, so that subclasses can fill it in first
+    private volatile PackageTrie whiteListTrie = null;
+
+    // classified, as a cache, stores 2 bits for each class indexed by soot's class numbering,
+    // the lower bit marks whether it is classified, and the higher bit whether it is 3rd party
+    private volatile AtomicLongArray classified = new AtomicLongArray(64);
+
     /**
      * getWhiteList returns the white list
      * @return the white list
@@ -16,26 +24,67 @@ public abstract class D3AbstractWhiteList implements AbstractD3Algo {
 
     @Override
     public boolean is3rdPartyLibClass(SootClass c) {
-        return isIn3rdPartyLibrary(c.getJavaPackageName());
+        return isIn3rdPartyLibrary(c);
     }
 
     @Override
     public boolean is3rdPartyLibMethod(SootMethod m) {
-        return isIn3rdPartyLibrary(m.getDeclaringClass().getJavaPackageName());
+        return isIn3rdPartyLibrary(m.getDeclaringClass());
     }
 
     @Override
     public boolean is3rdPartyLibField(SootField f) {
-        return isIn3rdPartyLibrary(f.getDeclaringClass().getJavaPackageName());
+        return isIn3rdPartyLibrary(f.getDeclaringClass());
+    }
+
+    // each class is classified once, and then looked up in classified
+    private boolean isIn3rdPartyLibrary(SootClass c) {
+        int number = c.getNumber();
+        // classes not numbered yet, i.e. not in the scene, are not cached
+        if (number <= 0) { return isIn3rdPartyLibrary(c.getJavaPackageName()); }
+
+        int             word  = (number << 1) >>> 6;
+        int             shift = (number << 1) & 63;
+        AtomicLongArray bits  = classified;
+        if (word < bits.length()) {
+            long w = bits.get(word);
+            if (0 != (w & (1L << shift))) { return 0 != (w & (2L << shift)); }
+        }
+
+        boolean is3rdParty = isIn3rdPartyLibrary(c.getJavaPackageName());
+        long    mask       = (1L | (is3rdParty ? 2L : 0L)) << shift;
+        ensureCapacity(word + 1).getAndAccumulate(word, mask, (x, y) -> x | y);
+
+        return is3rdParty;
+    }
+
+    // ensureCapacity grows classified to at least n words, a bit set into the old one concurrently
+    // may be lost, which only means the class is classified once more
+    private synchronized AtomicLongArray ensureCapacity(int n) {
+        AtomicLongArray bits = classified;
+        if (n <= bits.length()) { return bits; }
+
+        AtomicLongArray grown = new AtomicLongArray(Math.max(n, bits.length() * 2));
+        for (int i = 0; i < bits.length(); i ++) {
+            grown.set(i, bits.get(i));
+        }
+        classified = grown;
+
+        return grown;
     }
 
     // a white list way uses the signatures only
     private boolean isIn3rdPartyLibrary(String signature) {
-        List<String> whiteList = getWhiteList();
-        for (String s : whiteList) {
-            if (signature.startsWith(s)) { return true; }
+        PackageTrie trie = whiteListTrie;
+        if (null == trie) {
+            synchronized (this) {
+                if (null == whiteListTrie) {
+                    whiteListTrie = new PackageTrie(getWhiteList());
+                }
+                trie = whiteListTrie;
+            }
         }
 
-        return false;
+        return trie.matches(signature);
     }
 }
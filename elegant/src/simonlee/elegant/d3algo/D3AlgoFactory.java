@@ -14,13 +14,21 @@ public class D3AlgoFactory {
     public static final String D3_LIBSCOUT  = "d3.libscout";
 
     public static AbstractD3Algo getD3Algo(String id, List<String> args) {
+        return getD3Algo(id, args, 1);
+    }
+
+    public static AbstractD3Algo getD3Algo(String id, List<String> args, int threads) {
+        return getD3Algo(id, args, threads, false);
+    }
+
+    public static AbstractD3Algo getD3Algo(String id, List<String> args, int threads, boolean verify) {
         switch (id) {
         case D3_NONE:
             return new D3None();
         case D3_WHITELIST:
             return new D3WhiteList();
         case D3_LIBSCOUT:
-            return new D3LibScout(args.get(0), args.subList(1, args.size()));
+            return new D3LibScout(args.get(0), args.subList(1, args.size()), threads, verify);
         default:
             logger.warn("d3 algorithm `" + id + "' not found, use " + D3_NONE);
             return new D3None();
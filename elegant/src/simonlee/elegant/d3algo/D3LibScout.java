@@ -2,44 +2,100 @@ package simonlee.elegant.d3algo;
 
 import de.infsec.tpl.LibraryIdentifier;
 import de.infsec.tpl.profile.LibProfile;
+import de.infsec.tpl.profile.ProfileMatch;
+import de.infsec.tpl.profile.ProfileStore;
+import de.infsec.tpl.profile.SerializableProfileMatch;
+import de.infsec.tpl.stats.AppStats;
+import de.infsec.tpl.utils.SootHierarchy;
 import de.infsec.tpl.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import simonlee.elegant.Dbs;
+import soot.Scene;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class D3LibScout extends D3AbstractWhiteList {
 
+    public static final Logger logger = LoggerFactory.getLogger(D3LibScout.class);
+
     // for lazy loading
     private static boolean libProfilesAreLoaded = false;
     // TODO - Yes, hard code here, don't touch it, should be a parameter passed to ELEGANT
     // libProfiles directory path
     private static String libProfilesDirPath = Dbs.LIB_PROFILES_DIR;
-    // library libProfiles
-    private static List<LibProfile> libProfiles = null;
+    // packed libProfiles, rebuilt whenever libProfiles change
+    private static String libProfilesDbPath = Dbs.LIB_PROFILES_DB;
+    // library libProfiles, materialized lazily by the store
+    private static ProfileStore libProfiles = null;
+    // fingerprint of the library libProfiles
+    private static long libProfilesFingerprint = 0L;
+    // cached detection results, so that re-analysing an apk skips detection
+    private static LibScoutCache cache = new LibScoutCache(Dbs.LIB_SCOUT_CACHE_DIR);
 
     // apk path
     private String apkPath;
     // android jars dir path
     private List<String> androidJarsPathes;
+    // number of threads that libProfiles are matched with
+    private int threads;
+    // whether the shortcuts of detection are checked, i.e. profiles rejected before matching are matched anyway,
+    // and an app profiled from the soot scene is profiled from a WALA class hierarchy as well
+    private boolean verify;
 
     // detected libraries' package prefixes
-    private List<String> detectedLibPrefixes = new D3None().getWhiteList();
+    private List<String> detectedLibPrefixes = new ArrayList<>(new D3None().getWhiteList());
+    // summaries of the matched library profiles
+    private List<SerializableProfileMatch> profileMatches = new ArrayList<>();
+    // whether libraries are detected, detection is deferred until the soot scene is built
+    private boolean detected = false;
 
     public D3LibScout(String apkPath, List<String> androidJarsPathes) {
+        this(apkPath, androidJarsPathes, 1);
+    }
+
+    public D3LibScout(String apkPath, List<String> androidJarsPathes, int threads) {
+        this(apkPath, androidJarsPathes, threads, false);
+    }
+
+    public D3LibScout(String apkPath, List<String> androidJarsPathes, int threads, boolean verify) {
         this.apkPath = apkPath;
         this.androidJarsPathes = androidJarsPathes;
-        this.detect();
+        this.threads = threads;
+        this.verify = verify;
+    }
+
+    @Override
+    public void prepare() {
+        detectOnce();
     }
 
     @Override
     protected List<String> getWhiteList() {
+        detectOnce();
         return detectedLibPrefixes;
     }
 
-    // detect will do actual 3rd party libraries detection in a lazy way
+    /**
+     * getProfileMatches returns the summaries of all library profiles that match fully or partially
+     * @return the summaries
+     */
+    public List<SerializableProfileMatch> getProfileMatches() {
+        detectOnce();
+        return profileMatches;
+    }
+
+    private synchronized void detectOnce() {
+        if (!detected) {
+            detected = true;
+            detect();
+        }
+    }
+
+    // detect will do actual 3rd party libraries detection, on the soot scene if the apk is loaded into it
     private void detect() {
         try {
             File apk = new File(apkPath);
@@ -53,32 +109,128 @@ public class D3LibScout extends D3AbstractWhiteList {
                 D3LibScout.libProfilesAreLoaded = true;
             }
 
-            LibraryIdentifier identifier = new LibraryIdentifier(apk, this.androidJarsPathes);
-            detectedLibPrefixes.addAll(identifier.identifyLibraries(D3LibScout.libProfiles));
+            // the same apk, detected against the same profiles and android jars, gives the same results,
+            // but a verifying run has to detect again
+            String key = LibScoutCache.key(apk, fingerprint(D3LibScout.libProfilesFingerprint, this.androidJarsPathes));
+            LibScoutCache.Result cached = this.verify ? null : D3LibScout.cache.get(key);
+            if (null != cached) {
+                detectedLibPrefixes.addAll(cached.prefixes);
+                profileMatches.addAll(cached.matches);
+                return;
+            }
+
+            // profile the classes soot has already loaded, and parse the apk into a WALA class hierarchy
+            // only if the scene misses some of them, e.g. secondary dex files of multi-dex apks
+            SootHierarchy hierarchy = SootHierarchy.make(Scene.v(), apk, this.androidJarsPathes);
+            if (!hierarchy.isComplete() || hierarchy.getAppClasses().isEmpty()) {
+                hierarchy = null;
+            }
+
+            LibraryIdentifier identifier = new LibraryIdentifier(apk, this.androidJarsPathes, this.threads);
+            identifier.setVerifyAdmission(this.verify);
+            identifier.setVerifyHierarchy(this.verify);
+            List<String> prefixes = identifier.identifyLibraries(D3LibScout.libProfiles, hierarchy);
+
+            AppStats stats = identifier.getAppStats();
+            logger.info(stats.rejectedProfiles + " of " + D3LibScout.libProfiles.size()
+                    + " library profiles rejected before matching");
+            if (stats.admissionMisses > 0) {
+                logger.warn(stats.admissionMisses + " rejected library profiles match anyway");
+            } else if (0 == stats.admissionMisses) {
+                logger.info("all rejected library profiles verified not to match");
+            }
+            if (stats.hierarchyMismatches > 0) {
+                logger.warn(stats.hierarchyMismatches + " packages hashed differently from the soot scene than from WALA");
+            } else if (0 == stats.hierarchyMismatches) {
+                logger.info("package hashes from the soot scene verified against WALA");
+            }
+            for (ProfileMatch pm : identifier.getProfileMatches()) {
+                if (pm.isMatch() || pm.isPartialMatch()) {
+                    profileMatches.add(new SerializableProfileMatch(pm));
+                }
+            }
+            detectedLibPrefixes.addAll(prefixes);
+
+            try {
+                D3LibScout.cache.put(key, new LibScoutCache.Result(new ArrayList<>(prefixes), new ArrayList<>(profileMatches)));
+            } catch (IOException e) {
+                // do nothing, the apk is just detected again next time
+            }
         } catch (Exception e) {
-            // do nothing
+            // detection falls back to the default white list, but say why no library was detected
+            logger.error("3rd party library detection of " + apkPath + " failed, only the default white list is used", e);
         }
     }
 
     // loadLibraryProfiles will load profiles into the system, load only once, so synchronized
     private static synchronized void loadLibraryProfiles() {
-        D3LibScout.libProfiles = new ArrayList<>();
-
         File libProfilesDir = new File(D3LibScout.libProfilesDirPath);
+        File libProfilesDb  = new File(D3LibScout.libProfilesDbPath);
+
+        // hard-code here, the extensions "lib" is embedded in LibScout
+        List<File> libFiles = libProfilesDir.isDirectory()
+                ? Utils.collectFiles(libProfilesDir, new String[]{ "lib" })
+                : new ArrayList<>();
+        long fingerprint = fingerprint(libFiles);
+
+        // open the packed profiles, if they are up to date, or shipped without .lib files
+        if (libProfilesDb.isFile()) {
+            try {
+                ProfileStore store = ProfileStore.open(libProfilesDb);
+                if (libFiles.isEmpty() || store.getSource() == fingerprint) {
+                    D3LibScout.libProfiles = store;
+                    D3LibScout.libProfilesFingerprint = store.getSource();
+                    return;
+                }
+            } catch (IOException e) {
+                // do nothing, a broken store is rebuilt from .lib files
+            }
+        }
+
         if (!libProfilesDir.exists() || !libProfilesDir.isDirectory()) {
             throw new RuntimeException(D3LibScout.libProfilesDirPath + " is a directory or even not exists");
         }
 
+        List<LibProfile> profiles = new ArrayList<>();
         try {
-            // de-serialize library profiles, hard-code here, the extensions "lib" is embedded in LibScout
-            for (File f : Utils.collectFiles(libProfilesDir, new String[]{ "lib" })) {
+            // de-serialize library profiles
+            for (File f : libFiles) {
                 LibProfile lp = (LibProfile) Utils.disk2Object(f);
-                D3LibScout.libProfiles.add(lp);
+                profiles.add(lp);
             }
-
-            Collections.sort(D3LibScout.libProfiles, LibProfile.comp);
         } catch (ClassNotFoundException e) {
             System.exit(1);
         }
+
+        D3LibScout.libProfilesFingerprint = fingerprint;
+
+        // pack them, so that following runs only read the index, and keep them in memory if packing fails
+        try {
+            ProfileStore.write(profiles, libProfilesDb, fingerprint);
+            D3LibScout.libProfiles = ProfileStore.open(libProfilesDb);
+        } catch (IOException e) {
+            profiles.sort(LibProfile.comp);
+            D3LibScout.libProfiles = ProfileStore.of(profiles);
+        }
+    }
+
+    // fingerprint identifies a set of .lib files by their paths, sizes and modification times
+    private static long fingerprint(List<File> libFiles) {
+        long h = 1125899906842597L;
+        for (File f : libFiles) {
+            h = 31 * h + f.getPath().hashCode();
+            h = 31 * h + f.length();
+            h = 31 * h + f.lastModified();
+        }
+        return h;
+    }
+
+    // fingerprint identifies the detection's inputs besides the apk, i.e. the libProfiles and android jars
+    private static long fingerprint(long libProfilesFingerprint, List<String> androidJarsPathes) {
+        long h = libProfilesFingerprint;
+        for (String path : androidJarsPathes) {
+            h = 31 * h + path.hashCode();
+        }
+        return h;
     }
 }
@@ -0,0 +1,127 @@
+package simonlee.elegant.d3algo;
+
+import de.infsec.tpl.profile.SerializableProfileMatch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * LibScoutCache stores detection results of d3.libscout on disk, content-addressed by the SHA-256 of the
+ * apk and a fingerprint of everything else the detection depends on, e.g. the library profiles. A result
+ * is never updated in place, a changed apk or profile set simply yields another key.
+ */
+class LibScoutCache {
+
+    // bumped whenever the detection or the cached result changes incompatibly
+    private static final int VERSION = 1;
+
+    /**
+     * Result is a cached detection result
+     */
+    static class Result implements Serializable {
+        private static final long serialVersionUID = 2718053360216540843L;
+
+        // detected libraries' package prefixes
+        final List<String> prefixes;
+        // summaries of the matched library profiles
+        final List<SerializableProfileMatch> matches;
+
+        Result(List<String> prefixes, List<SerializableProfileMatch> matches) {
+            this.prefixes = prefixes;
+            this.matches = matches;
+        }
+    }
+
+    private final File dir;
+
+    LibScoutCache(String dirPath) {
+        this.dir = new File(dirPath);
+    }
+
+    /**
+     * key computes the cache key of an apk
+     *
+     * @param apk         the apk file
+     * @param fingerprint fingerprint of the detection's other inputs
+     * @return            the key
+     * @throws IOException when the apk cannot be read
+     */
+    static String key(File apk, long fingerprint) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new RuntimeException(e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(apk)) {
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        sb.append('-').append(String.format("%016x", fingerprint));
+        sb.append(".v").append(VERSION);
+
+        return sb.toString();
+    }
+
+    /**
+     * get looks up a cached result
+     *
+     * @param key the cache key
+     * @return    the result, or null if there is none or it is unreadable
+     */
+    Result get(String key) {
+        File f = new File(dir, key);
+        if (!f.isFile()) { return null; }
+
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(f))) {
+            return (Result) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // a broken entry is treated as a miss, and overwritten later
+            return null;
+        }
+    }
+
+    /**
+     * put caches a result, written to a temporary file first, so that readers never see a partial one
+     *
+     * @param key    the cache key
+     * @param result the result
+     * @throws IOException when the result cannot be written
+     */
+    void put(String key, Result result) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + dir);
+        }
+
+        File f   = new File(dir, key);
+        File tmp = File.createTempFile(key, ".tmp", dir);
+        try {
+            try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(tmp))) {
+                out.writeObject(result);
+            }
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+}
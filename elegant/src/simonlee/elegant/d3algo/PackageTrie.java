@@ -0,0 +1,63 @@
+package simonlee.elegant.d3algo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PackageTrie is a trie of package prefixes split by segments, i.e. by '.', and it answers whether a
+ * package name starts with any of the prefixes, walking the segments of the package name once instead
+ * of scanning all prefixes.
+ *
+ * The last segment of a prefix is a partial one, e.g. "okhttp" matches "okhttp3", just as
+ * String.startsWith does, so partial segments are kept in the node of their parent segments.
+ */
+class PackageTrie {
+
+    private static class Node {
+        // children, keyed by full segments
+        private Map<String, Node> children = new HashMap<>();
+        // partials are the last segments of prefixes ending under this node
+        private List<String>      partials = new ArrayList<>(1);
+    }
+
+    private final Node root = new Node();
+
+    PackageTrie(List<String> prefixes) {
+        for (String prefix : prefixes) {
+            Node     n        = root;
+            String[] segments = prefix.split("\\.", -1);
+            for (int i = 0; i < segments.length - 1; i ++) {
+                n = n.children.computeIfAbsent(segments[i], k -> new Node());
+            }
+            n.partials.add(segments[segments.length - 1]);
+        }
+    }
+
+    /**
+     * matches checks whether packageName starts with any of the prefixes
+     *
+     * @param packageName the package name
+     * @return            true if it does
+     */
+    boolean matches(String packageName) {
+        Node n     = root;
+        int  start = 0;
+
+        while (null != n) {
+            int    end     = packageName.indexOf('.', start);
+            String segment = -1 == end ? packageName.substring(start) : packageName.substring(start, end);
+
+            for (String partial : n.partials) {
+                if (segment.startsWith(partial)) { return true; }
+            }
+            if (-1 == end) { return false; }
+
+            n     = n.children.get(segment);
+            start = end + 1;
+        }
+
+        return false;
+    }
+}
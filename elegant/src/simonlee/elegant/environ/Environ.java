@@ -23,6 +23,12 @@ public class Environ implements PubSub.Handle {
     // k-indirect-caller, used in call site computing
     // 0-indirect-caller is its direct caller
     public static final int ENV_K_INDIRECT_CALLER = 5;
+    // capacity of slicing caches, i.e. max number of units cached, used in backward slicing
+    public static final int ENV_SLICING_CACHE_CAPACITY = 1 << 20;
+    // capacity of per-method caches, i.e. max number of units indexed, used in backward slicing
+    public static final int ENV_METHOD_CACHE_CAPACITY = 1 << 21;
+    // capacity of the PDG cache, i.e. max number of units indexed, a PDG is much heavier per unit than a dominator tree
+    public static final int ENV_PDG_CACHE_CAPACITY = 1 << 18;
 
     // Environments
 
@@ -34,7 +40,23 @@ public class Environ implements PubSub.Handle {
     private SetupApplication app;
     private ProcessManifest  manifest;
     private AbstractD3Algo   d3Algo;
-    private IInfoflowCFG     interproceduralCFG;
+    // built once, finders may query it from several threads
+    private volatile IInfoflowCFG interproceduralCFG;
+
+    // whether to build the call graph only, i.e. skip the taint analysis
+    private boolean callGraphOnly = false;
+
+    // number of threads that finders analyse models with
+    private int finderThreads = 1;
+
+    // max number of call chains reported per call site of an api
+    private int maxCallChains = Integer.MAX_VALUE;
+
+    // number of threads that d3 algorithms detect libraries with
+    private int d3Threads = 1;
+
+    // whether d3 algorithms check their shortcuts against the full detection
+    private boolean d3Verify = false;
 
     public Environ(ELEGANT elegant) {
         this.elegant = elegant;
@@ -60,13 +82,42 @@ public class Environ implements PubSub.Handle {
     }
 
     public IInfoflowCFG getInterproceduralCFG() {
-        return interproceduralCFG == null ? (interproceduralCFG = new InfoflowCFG()) : interproceduralCFG;
+        IInfoflowCFG icfg = interproceduralCFG;
+        if (null == icfg) {
+            synchronized (this) {
+                icfg = interproceduralCFG;
+                if (null == icfg) {
+                    interproceduralCFG = icfg = new InfoflowCFG();
+                }
+            }
+        }
+        return icfg;
     }
 
     public CallGraph getCallGraph() {
         return Scene.v().getCallGraph();
     }
 
+    public boolean isCallGraphOnly() {
+        return callGraphOnly;
+    }
+
+    public int getFinderThreads() {
+        return finderThreads;
+    }
+
+    public int getMaxCallChains() {
+        return maxCallChains;
+    }
+
+    public int getD3Threads() {
+        return d3Threads;
+    }
+
+    public boolean isD3Verify() {
+        return d3Verify;
+    }
+
     public String getAppName() {
         return this.manifest.getApplicationName();
     }
@@ -94,6 +145,21 @@ public class Environ implements PubSub.Handle {
                 break;
             case OptParser.OPT_PLATFORMS_PATH:
                 break;
+            case OptParser.OPT_CALLGRAPH_ONLY:
+                this.callGraphOnly = Boolean.TRUE.equals(bundle.getV());
+                break;
+            case OptParser.OPT_FINDER_THREADS:
+                this.finderThreads = null == bundle.getV() ? 1 : (Integer) bundle.getV();
+                break;
+            case OptParser.OPT_MAX_CALL_CHAINS:
+                this.maxCallChains = null == bundle.getV() ? Integer.MAX_VALUE : (Integer) bundle.getV();
+                break;
+            case OptParser.OPT_D3_THREADS:
+                this.d3Threads = null == bundle.getV() ? 1 : (Integer) bundle.getV();
+                break;
+            case OptParser.OPT_D3_VERIFY:
+                this.d3Verify = Boolean.TRUE.equals(bundle.getV());
+                break;
             case OptParser.OPT_D3_ALGO:
                 this.d3Algo = (AbstractD3Algo) bundle.getExtra(OptParser.OPT_BDL_D3_ALGO_ALGO);
                 break;
@@ -39,6 +39,21 @@ public class OptParser implements PubSub {
     public static final String OPT_D3_ALGO = "d3-algo";
     public static final String OPT_BDL_D3_ALGO_ALGO = "d3-algo.algo";
 
+    // option OPT_CALLGRAPH_ONLY and its bundles
+    public static final String OPT_CALLGRAPH_ONLY = "callgraph-only";
+
+    // option OPT_FINDER_THREADS and its bundles
+    public static final String OPT_FINDER_THREADS = "finder-threads";
+
+    // option OPT_MAX_CALL_CHAINS and its bundles
+    public static final String OPT_MAX_CALL_CHAINS = "max-call-chains";
+
+    // option OPT_D3_THREADS and its bundles
+    public static final String OPT_D3_THREADS = "d3-threads";
+
+    // option OPT_D3_VERIFY and its bundles
+    public static final String OPT_D3_VERIFY = "d3-verify";
+
     private Map<String, Object> opts;
     private List<Handle> handles;
 
@@ -75,6 +90,11 @@ public class OptParser implements PubSub {
 
         // some opts don't need parsing, publish them directly
         publish(new OptBundle<>(OPT_PLATFORMS_PATH, (String) getOpt(OPT_PLATFORMS_PATH)));
+        publish(new OptBundle<>(OPT_CALLGRAPH_ONLY, (Boolean) getOpt(OPT_CALLGRAPH_ONLY)));
+        publish(new OptBundle<>(OPT_FINDER_THREADS, (Integer) getOpt(OPT_FINDER_THREADS)));
+        publish(new OptBundle<>(OPT_MAX_CALL_CHAINS, (Integer) getOpt(OPT_MAX_CALL_CHAINS)));
+        publish(new OptBundle<>(OPT_D3_THREADS, (Integer) getOpt(OPT_D3_THREADS)));
+        publish(new OptBundle<>(OPT_D3_VERIFY, (Boolean) getOpt(OPT_D3_VERIFY)));
     }
 
     @Override
@@ -121,8 +141,8 @@ public class OptParser implements PubSub {
                 buffer.append(temp.trim());
             }
 
-            // set models
-            bundle.putExtra(OPT_BDL_MODELS_MODEL, new HashSet<>(JSON.parseArray(buffer.toString(), ApiContext.class)));
+            // set models, keep them in the order of the file, so that issues are emitted in a deterministic order
+            bundle.putExtra(OPT_BDL_MODELS_MODEL, new LinkedHashSet<>(JSON.parseArray(buffer.toString(), ApiContext.class)));
         } catch (IOException e) {
             throw new RuntimeException("Unexpected error generated while reading " + modelsPath);
         }
@@ -198,7 +218,9 @@ public class OptParser implements PubSub {
             }
         }
 
-        bundle.putExtra(OPT_BDL_D3_ALGO_ALGO, D3AlgoFactory.getD3Algo(d3Algo, args));
+        Integer d3Threads = (Integer) getOpt(OPT_D3_THREADS);
+        boolean d3Verify = Boolean.TRUE.equals(getOpt(OPT_D3_VERIFY));
+        bundle.putExtra(OPT_BDL_D3_ALGO_ALGO, D3AlgoFactory.getD3Algo(d3Algo, args, null == d3Threads ? 1 : d3Threads, d3Verify));
 
         return bundle;
     }
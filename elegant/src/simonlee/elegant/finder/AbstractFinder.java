@@ -3,9 +3,14 @@ package simonlee.elegant.finder;
 import simonlee.elegant.ELEGANT;
 import simonlee.elegant.models.ApiContext;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
-public abstract class AbstractFinder {
+public abstract class AbstractFinder<C extends AnalysisContext> {
 
     protected ELEGANT elegant;
 
@@ -24,50 +29,91 @@ public abstract class AbstractFinder {
     protected void setUp() { }
 
     /**
-     * detect will detect all potential bugs triggered by model
+     * createContext creates an analysis context for model, all states of analysing
+     * the model must be kept in it, because models are analysed concurrently
      *
      * @param model api context model
-     * @return      true for continuing to validate if detected, or false
+     * @return      the analysis context of model
      */
-    protected abstract boolean detect(ApiContext model);
+    protected abstract C createContext(ApiContext model);
+
+    /**
+     * detect will detect all potential bugs triggered by model
+     *
+     * @param context analysis context of the model
+     * @return        true for continuing to validate if detected, or false
+     */
+    protected abstract boolean detect(C context);
 
     /**
      * validate will validate all potential bugs and remove others if detect returned true.
      *
-     * @param model api context model
-     * @return      true for continue to generate, or false
+     * @param context analysis context of the model
+     * @return        true for continue to generate, or false
      */
-    protected abstract boolean validate(ApiContext model);
+    protected abstract boolean validate(C context);
 
     /**
-     * generate will generate all validated bugs
+     * generate will generate all validated bugs, it is invoked in the order of models
      *
-     * @param model api context model
+     * @param context analysis context of the model
+     */
+    protected abstract void generate(C context);
+
+    /**
+     * finish allows you to do some finishing works after a model is analysed, no matter
+     * whether it is generated or not, it is invoked in the order of models
+     *
+     * @param context analysis context of the model
      */
-    protected abstract void generate(ApiContext model);
+    protected void finish(C context) { }
 
     /**
      * analyse will find and submit all validated bugs in the routine:
      *
      * algorithm:
-     *   for each model m in model list do
+     *   for each model m in model list do in parallel
      *     detection:  detect all potential bugs
      *     validation: validate all detected potential bugs
+     *   done
+     *   for each model m in model list do
      *     generation: generate issues for all validated bugs
      *   done
      *
+     * detection and validation of models run on a pool of ELEGANT's finder threads, while
+     * generation runs in the order of models, so that issues are emitted deterministically
      */
     public void analyse() {
-        this.models.forEach(model -> {
-            // when this model has important field, then we skip the validate phase, generate them directly
-            if (detect(model) &&
-                    (model.isImportant()
-                            || validate(model))) {
-                generate(model);
+        ForkJoinPool          pool     = new ForkJoinPool(Math.max(1, this.elegant.getFinderThreads()));
+        List<Future<Boolean>> results  = new ArrayList<>(this.models.size());
+        List<C>               contexts = new ArrayList<>(this.models.size());
+
+        try {
+            for (ApiContext model : this.models) {
+                C context = createContext(model);
+                contexts.add(context);
+                // when this model has important field, then we skip the validate phase, generate them directly
+                results.add(pool.submit(() -> detect(context) &&
+                        (context.getModel().isImportant()
+                                || validate(context))));
+            }
+
+            for (int i = 0; i < contexts.size(); i ++) {
+                C context = contexts.get(i);
+                if (results.get(i).get()) {
+                    generate(context);
+                }
+                finish(context);
+                // release the context, it is never used again
+                contexts.set(i, null);
             }
-//            if (detect(model)) {
-//                generate(model);
-//            }
-        });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
     }
 }
@@ -0,0 +1,19 @@
+package simonlee.elegant.finder;
+
+import simonlee.elegant.models.ApiContext;
+
+// AnalysisContext isolates all states of analysing a model,
+// a finder creates one for each model, so that models can be analysed concurrently
+public class AnalysisContext {
+
+    protected ApiContext model;
+
+    public AnalysisContext(ApiContext model) {
+        this.model = model;
+    }
+
+    public ApiContext getModel() {
+        return model;
+    }
+
+}
@@ -1,16 +1,23 @@
 package simonlee.elegant.finder;
 
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import simonlee.elegant.ELEGANT;
+import simonlee.elegant.environ.OptParser;
 import simonlee.elegant.finder.plainfinder.PFinder;
 import simonlee.elegant.finder.reflectionfinder.RFinder;
 import simonlee.elegant.models.ApiContext;
+import simonlee.elegant.utils.PDGIndex;
+import simonlee.elegant.utils.Soots;
 import soot.PackManager;
 
 import java.util.*;
 
 public class Finder {
 
+    private static Logger logger = LoggerFactory.getLogger(Finder.class);
+
     // elegant is the container that finder is in
     private ELEGANT elegant;
 
@@ -24,27 +31,70 @@ public class Finder {
     }
 
     private void init() {
+        long startMemory = usedHeap();
+        long startTime   = System.currentTimeMillis();
+
         try {
-            // run info flow analysis
-            this.elegant.getApp().runInfoflow();
+            if (this.elegant.isCallGraphOnly()) {
+                // finders only use the call graph and the icfg, so we build entry points,
+                // callbacks and the call graph, but skip the taint analysis
+                this.elegant.getApp().constructCallgraph();
+            } else {
+                // run info flow analysis
+                this.elegant.getApp().runInfoflow();
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
 
+        // report the cost of soot, compare the two modes to get the saved time and memory, the heap is
+        // sampled after a gc, so it approximates the memory soot retains rather than what it allocated
+        long elapsedTime = System.currentTimeMillis() - startTime;
+        long usedMemory  = usedHeap() - startMemory;
+        logger.info(String.format("%s of `%s' took %d ms and about %d MB heap",
+                this.elegant.isCallGraphOnly() ? "call graph construction" : "info flow analysis",
+                this.elegant.getOpt(OptParser.OPT_APK_PATH),
+                elapsedTime,
+                usedMemory / (1024 * 1024)));
+
+        // build the icfg and let the d3 algorithm analyse the scene before finders query them concurrently,
+        // per-method caches are keyed by method only, so all finder threads must share the same icfg
+        startTime = System.currentTimeMillis();
+        this.elegant.getInterproceduralCFG();
+        long icfgTime = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        this.elegant.getD3Algo().prepare();
+        long d3Time = System.currentTimeMillis() - startTime;
+
+        logger.info(String.format("icfg construction took %d ms, 3rd party library detection took %d ms", icfgTime, d3Time));
+
         // uncomment to generate a call graph viewer
         // new CallGraphViewer(Scene.v().getCallGraph(), entryPoint).export("cg", "/Users/apple/Desktop");
     }
 
+    // usedHeap gets the heap in use after a gc, an approximation as the jvm may ignore the request
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
     private void go() {
         Set<ApiContext> models = this.elegant.getModels();
 
         // vanilla checking
-        AbstractFinder plainFinder = new PFinder(elegant, models);
+        AbstractFinder<?> plainFinder = new PFinder(elegant, models);
         plainFinder.analyse();
 
         // reflection checking
-        AbstractFinder reflectionFinder = new RFinder(elegant, models);
+        AbstractFinder<?> reflectionFinder = new RFinder(elegant, models);
         reflectionFinder.analyse();
+
+        // report how much slicing is reused across models
+        logger.info("backward slicing cache: " + Soots.getBackwardSlicingCache());
+        logger.info("data dependencies cache: " + Soots.getDataDependenciesCache());
+        logger.info("pdg index cache: " + PDGIndex.getPDGIndexCache());
     }
 
 }
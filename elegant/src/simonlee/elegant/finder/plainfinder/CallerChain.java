@@ -0,0 +1,73 @@
+package simonlee.elegant.finder.plainfinder;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * CallerChain is an immutable list of caller points, from the outermost caller to the caller of the
+ * api. A chain is its head followed by its tail, and a longer chain is made by prepending a caller
+ * point to it, so all chains extending the same tail share it while paths are enumerated. Chains are
+ * meant to be iterated, get(i) walks i links; issues copy the chain, see {@link PIssue#setCallerPoints}.
+ */
+public final class CallerChain extends AbstractList<PIssue.CallerPoint> {
+
+    // EMPTY is the chain without any caller points
+    public static final CallerChain EMPTY = new CallerChain(null, null);
+
+    private final PIssue.CallerPoint head;
+    private final CallerChain        tail;
+    private final int                size;
+
+    private CallerChain(PIssue.CallerPoint head, CallerChain tail) {
+        this.head = head;
+        this.tail = tail;
+        this.size = null == tail ? 0 : tail.size + 1;
+    }
+
+    /**
+     * prepend makes a new chain with p as the outermost caller point, this chain is left unchanged
+     *
+     * @param p the caller point
+     * @return  the new chain
+     */
+    public CallerChain prepend(PIssue.CallerPoint p) {
+        return new CallerChain(p, this);
+    }
+
+    @Override
+    public PIssue.CallerPoint get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        CallerChain c = this;
+        for (int i = 0; i < index; i ++) { c = c.tail; }
+        return c.head;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<PIssue.CallerPoint> iterator() {
+        return new Iterator<PIssue.CallerPoint>() {
+            private CallerChain current = CallerChain.this;
+
+            @Override
+            public boolean hasNext() {
+                return current.size > 0;
+            }
+
+            @Override
+            public PIssue.CallerPoint next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                PIssue.CallerPoint p = current.head;
+                current = current.tail;
+                return p;
+            }
+        };
+    }
+}
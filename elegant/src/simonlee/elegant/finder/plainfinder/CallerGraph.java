@@ -0,0 +1,364 @@
+package simonlee.elegant.finder.plainfinder;
+
+import simonlee.elegant.finder.CallSites;
+import soot.SootMethod;
+import soot.Unit;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * CallerGraph is the graph of all direct and indirect callers of an api, keyed by SootMethod, so that
+ * a method reached from many paths is a single shared node, and its call sites are a single shared
+ * edge, instead of being duplicated in every branch of a call site tree. Edges are CallSites, from
+ * a callee to one of its callers, with all call sites of the callee in the caller.
+ *
+ * Callers are expanded in breadth-first order, and a method is expanded only if its distance to the
+ * api is at most K. Recursive calls form cycles in the graph, so strongly connected components are
+ * condensed, and each component is traversed only once in a path.
+ *
+ * The graph is shared by all models of the same api, and never changed once built. Each model
+ * prunes it into a Pruned view, which keeps only call sites not guarded in the model's context.
+ */
+public class CallerGraph {
+
+    // Node is a method in the graph
+    public static class Node {
+
+        private final SootMethod      method;
+        private final int             id;
+        // level is the distance from the api to the method
+        private final int             level;
+        // callers are the edges from the method to all its callers
+        private final List<CallSites> callers   = new ArrayList<>();
+        // expanded marks whether callers of the method are computed
+        private boolean               expanded  = false;
+        // component is the strongly connected component where the method lives at
+        private int                   component = -1;
+        // entry marks whether the method is where a path ends at
+        private boolean               entry     = false;
+
+        private Node(SootMethod method, int id, int level) {
+            this.method = method;
+            this.id     = id;
+            this.level  = level;
+        }
+
+        public SootMethod getMethod() {
+            return method;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public List<CallSites> getCallers() {
+            return Collections.unmodifiableList(callers);
+        }
+
+        /**
+         * isEntry checks whether the method is where a path ends at, i.e. its callers are not expanded
+         * because it is too far from the api, or it has no callers except those in its component
+         *
+         * @return true if the method is an entry
+         */
+        public boolean isEntry() {
+            return entry;
+        }
+
+    }
+
+    /**
+     * Pruned is a view of the graph for a specific model, where call sites guarded in the model's
+     * context are removed, and so are methods that can no longer reach an entry, the graph itself
+     * is left unchanged.
+     */
+    public class Pruned {
+
+        // sites are the unguarded call sites of each reached edge, edges fully guarded are absent
+        private final Map<CallSites, Set<Unit>> sites = new IdentityHashMap<>();
+        // live marks methods that can reach an entry through unguarded call sites
+        private final boolean[]                 live  = new boolean[nodes.size()];
+
+        private Pruned() { }
+
+        /**
+         * isEmpty checks whether all call sites of the api are pruned, i.e. all issues are fixed
+         *
+         * @return true if no path remains
+         */
+        public boolean isEmpty() {
+            return !live[root.id];
+        }
+
+        /**
+         * getCallSites gets the unguarded call sites of edge
+         *
+         * @param edge the edge
+         * @return     the unguarded call sites of edge, empty if the edge is pruned
+         */
+        public Set<Unit> getCallSites(CallSites edge) {
+            return isLive(edge) ? sites.get(edge) : Collections.emptySet();
+        }
+
+        /**
+         * forEachPath lazily enumerates all remaining paths from the api to an entry, a path is the list
+         * of edges from the api outwards, and a component is traversed by a shortest route in a path
+         *
+         * @param consumer consumes each path, the path must not be kept after it returns, and the
+         *                 enumeration stops once it returns false
+         */
+        public void forEachPath(Predicate<List<CallSites>> consumer) {
+            if (isEmpty()) { return; }
+            enumeratePaths(root, new ArrayList<>(), consumer);
+        }
+
+        // isLive checks whether edge is not pruned
+        private boolean isLive(CallSites edge) {
+            return sites.containsKey(edge) && live[nodeOf(edge.getCaller()).id];
+        }
+
+        // enumeratePaths enumerates paths entering the component of a at a, with chain as prefix,
+        // returns false if the enumeration is stopped
+        private boolean enumeratePaths(Node a, List<CallSites> chain, Predicate<List<CallSites>> consumer) {
+            // a component without callers outside is left at where it is entered
+            if (a != root && a.isEntry() && a.expanded) {
+                return consumer.test(chain);
+            }
+
+            // find the shortest routes from a to other methods of its component
+            Map<Node, CallSites> via   = new HashMap<>();
+            List<Node>           order = new ArrayList<>();
+            order.add(a);
+            via.put(a, null);
+            for (int i = 0; i < order.size(); i ++) {
+                for (CallSites e : order.get(i).callers) {
+                    Node c = nodeOf(e.getCaller());
+                    if (c.component == a.component && !via.containsKey(c) && isLive(e)) {
+                        via.put(c, e);
+                        order.add(c);
+                    }
+                }
+            }
+
+            // then leave the component at each method, either as an entry, or to a caller outside
+            for (Node b : order) {
+                int length = chain.size();
+                for (CallSites e = via.get(b); null != e; e = via.get(nodeOf(e.getCallee()))) {
+                    chain.add(length, e);
+                }
+
+                boolean going = !(b != root && b.isEntry()) || consumer.test(chain);
+                for (CallSites e : b.callers) {
+                    if (!going) { break; }
+
+                    Node c = nodeOf(e.getCaller());
+                    if (c.component != a.component && isLive(e)) {
+                        chain.add(e);
+                        going = enumeratePaths(c, chain, consumer);
+                        chain.remove(chain.size() - 1);
+                    }
+                }
+
+                chain.subList(length, chain.size()).clear();
+                if (!going) { return false; }
+            }
+
+            return true;
+        }
+
+    }
+
+    private final List<Node>             nodes = new ArrayList<>();
+    private final Map<SootMethod, Node>  index = new HashMap<>();
+    private Node                         root;
+
+    private CallerGraph() { }
+
+    /**
+     * build builds the caller graph of api
+     *
+     * @param api       the api
+     * @param k         methods at distance at most k to the api are expanded
+     * @param callersOf finds call sites of a callee, clarified by their callers
+     * @return          the caller graph of api
+     */
+    public static CallerGraph build(SootMethod api, int k, Function<SootMethod, Map<SootMethod, CallSites>> callersOf) {
+        CallerGraph g = new CallerGraph();
+        g.root = g.addNode(api, 0);
+
+        Queue<Node> queue = new LinkedList<>();
+        queue.offer(g.root);
+        while (!queue.isEmpty()) {
+            Node n = queue.poll();
+            if (n.level > k) { continue; }
+
+            n.expanded = true;
+            for (Map.Entry<SootMethod, CallSites> entry : callersOf.apply(n.method).entrySet()) {
+                n.callers.add(entry.getValue());
+                if (!g.index.containsKey(entry.getKey())) {
+                    queue.offer(g.addNode(entry.getKey(), n.level + 1));
+                }
+            }
+        }
+
+        g.condense();
+        return g;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * size gets the number of methods
+     *
+     * @return the number of methods
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * nodeOf gets the node of method m
+     *
+     * @param m the method
+     * @return  the node of m, or null if m is not in this graph
+     */
+    public Node nodeOf(SootMethod m) {
+        return index.get(m);
+    }
+
+    /**
+     * prune prunes the graph by traversing from the api, a call site is removed if it is guarded,
+     * callers only reached through removed call sites are not traversed, then methods that can not
+     * reach an entry are removed
+     *
+     * @param isGuarded checks whether a call site in a caller is guarded
+     * @return          the pruned view
+     */
+    public Pruned prune(BiPredicate<SootMethod, Unit> isGuarded) {
+        Pruned                pruned  = new Pruned();
+        boolean[]             reached = new boolean[nodes.size()];
+        Map<Node, List<Node>> callees = new HashMap<>();
+        Queue<Node>           queue   = new LinkedList<>();
+
+        // 1. remove guarded call sites of all reached edges
+        reached[root.id] = true;
+        queue.offer(root);
+        while (!queue.isEmpty()) {
+            Node n = queue.poll();
+            for (CallSites e : n.callers) {
+                Set<Unit> s = new LinkedHashSet<>();
+                for (Unit callSite : e.getCallSites()) {
+                    if (!isGuarded.test(e.getCaller(), callSite)) { s.add(callSite); }
+                }
+                if (s.isEmpty()) { continue; }
+
+                Node c = nodeOf(e.getCaller());
+                pruned.sites.put(e, s);
+                callees.computeIfAbsent(c, x -> new ArrayList<>()).add(n);
+                if (!reached[c.id]) {
+                    reached[c.id] = true;
+                    queue.offer(c);
+                }
+            }
+        }
+
+        // 2. mark methods that can reach an entry, backwards from all reached entries
+        for (Node n : nodes) {
+            if (reached[n.id] && n != root && n.isEntry()) {
+                pruned.live[n.id] = true;
+                queue.offer(n);
+            }
+        }
+        while (!queue.isEmpty()) {
+            for (Node callee : callees.getOrDefault(queue.poll(), Collections.emptyList())) {
+                if (!pruned.live[callee.id]) {
+                    pruned.live[callee.id] = true;
+                    queue.offer(callee);
+                }
+            }
+        }
+
+        return pruned;
+    }
+
+    // addNode adds a node of method m at level
+    private Node addNode(SootMethod m, int level) {
+        Node n = new Node(m, nodes.size(), level);
+        nodes.add(n);
+        index.put(m, n);
+        return n;
+    }
+
+    // condense finds strongly connected components using an iterative Tarjan's algorithm,
+    // and marks entries of the graph
+    private void condense() {
+        int       n         = nodes.size();
+        int[]     order     = new int[n];
+        int[]     low       = new int[n];
+        int[]     cursors   = new int[n];
+        boolean[] onStack   = new boolean[n];
+        int[]     stack     = new int[n];
+        int[]     calls     = new int[n];
+        int       sp        = 0;
+        int       cp        = 0;
+        int       counter   = 0;
+        int       component = 0;
+
+        Arrays.fill(order, -1);
+        for (int s = 0; s < n; s ++) {
+            if (-1 != order[s]) { continue; }
+
+            order[s] = low[s] = counter ++;
+            stack[sp ++] = s;
+            onStack[s]   = true;
+            calls[cp ++] = s;
+
+            while (cp > 0) {
+                int  v = calls[cp - 1];
+                Node m = nodes.get(v);
+                if (cursors[v] < m.callers.size()) {
+                    int w = nodeOf(m.callers.get(cursors[v] ++).getCaller()).id;
+                    if (-1 == order[w]) {
+                        order[w] = low[w] = counter ++;
+                        stack[sp ++] = w;
+                        onStack[w]   = true;
+                        calls[cp ++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                } else {
+                    cp --;
+                    if (low[v] == order[v]) {
+                        int w;
+                        do {
+                            w = stack[-- sp];
+                            onStack[w] = false;
+                            nodes.get(w).component = component;
+                        } while (w != v);
+                        component ++;
+                    }
+                    if (cp > 0) {
+                        int u = calls[cp - 1];
+                        low[u] = Math.min(low[u], low[v]);
+                    }
+                }
+            }
+        }
+
+        // a component is closed if no member has callers outside it
+        boolean[] open = new boolean[component];
+        for (Node m : nodes) {
+            for (CallSites e : m.callers) {
+                if (nodeOf(e.getCaller()).component != m.component) { open[m.component] = true; }
+            }
+        }
+        for (Node m : nodes) {
+            m.entry = !m.expanded || !open[m.component];
+        }
+    }
+}
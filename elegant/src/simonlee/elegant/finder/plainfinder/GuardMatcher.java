@@ -0,0 +1,203 @@
+package simonlee.elegant.finder.plainfinder;
+
+import simonlee.elegant.models.ApiContext;
+import soot.SootFieldRef;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.*;
+
+import java.util.*;
+
+/**
+ * GuardMatcher checks whether a unit can be a guard of an api-context model. Most guards are recognized
+ * structurally: a device guard reads a device field of android.os.Build, or compares against a bad device
+ * name of the model, and an api level guard reads a field of android.os.Build$VERSION (or android.os.Build
+ * TIME). Units that are not are matched by their text, as guards always were, e.g. a unit mentioning MODEL
+ * or SDK in any name, so both checks together accept exactly the units the text alone does.
+ *
+ * A matcher is compiled once per model, and checking a unit reads its operands directly, so only units
+ * that are not structural guards are converted to text.
+ */
+public class GuardMatcher {
+
+    private static final String BUILD               = "android.os.Build";
+    private static final String BUILD_VERSION       = "android.os.Build$VERSION";
+    private static final String BUILD_VERSION_CODES = "android.os.Build$VERSION_CODES";
+
+    // device fields of android.os.Build
+    private static final Set<String> DEVICE_FIELDS = new HashSet<>(Arrays.asList(
+            "BOARD", "BRAND", "DEVICE", "PRODUCT", "MANUFACTURER", "MODEL"));
+    // time fields of android.os.Build
+    private static final Set<String> TIME_FIELDS   = new HashSet<>(Collections.singletonList("TIME"));
+
+    // badDevices are the distinct bad device names
+    private final String[]                 badDevices;
+    // whether the model needs to check api level or system version
+    private final boolean                  needCheckVersion;
+    // versionCallees, as a cache, stores whether a callee checks the api level, i.e. 1-depth invoking
+    private final Map<SootMethod, Boolean> versionCallees = new HashMap<>();
+
+    private GuardMatcher(ApiContext model) {
+        Set<String> devices = new LinkedHashSet<>();
+        for (String device : model.getContext().getBadDevices()) {
+            if (null != device) { devices.add(device); }
+        }
+
+        this.badDevices       = devices.toArray(new String[0]);
+        this.needCheckVersion = model.needCheckApiLevel() || model.needCheckSystemVersion();
+    }
+
+    /**
+     * compile compiles a matcher for model, a matcher is not thread-safe, so it is
+     * expected to be used by the thread analysing the model only
+     *
+     * @param model the api-context model
+     * @return      the matcher of model
+     */
+    public static GuardMatcher compile(ApiContext model) {
+        return new GuardMatcher(model);
+    }
+
+    /**
+     * isDeviceGuard checks whether u can handle the device specific issue, i.e. it reads a device
+     * field of android.os.Build, or uses a string constant containing a bad device name, or its text
+     * mentions a device field or a bad device name
+     *
+     * @param u the unit
+     * @return  true if u can be a device guard
+     */
+    public boolean isDeviceGuard(Unit u) {
+        return isStructuralDeviceGuard(u) || mentionsDevice(u.toString());
+    }
+
+    // isStructuralDeviceGuard checks whether u reads a device field of android.os.Build, or uses a string
+    // constant containing a bad device name
+    private boolean isStructuralDeviceGuard(Unit u) {
+        if (!(u instanceof Stmt)) { return false; }
+        Stmt s = (Stmt) u;
+
+        if (s.containsFieldRef() && isFieldOf(s.getFieldRef().getFieldRef(), BUILD, DEVICE_FIELDS)) {
+            return true;
+        }
+
+        if (0 == badDevices.length) { return false; }
+
+        if (s instanceof AssignStmt && containsBadDevice(((AssignStmt) s).getRightOp())) {
+            return true;
+        }
+        if (s instanceof IfStmt) {
+            Value condition = ((IfStmt) s).getCondition();
+            if (condition instanceof BinopExpr &&
+                    (containsBadDevice(((BinopExpr) condition).getOp1()) ||
+                     containsBadDevice(((BinopExpr) condition).getOp2()))) {
+                return true;
+            }
+        }
+        if (s.containsInvokeExpr()) {
+            InvokeExpr invokeExpr = s.getInvokeExpr();
+            for (int i = 0; i < invokeExpr.getArgCount(); i ++) {
+                if (containsBadDevice(invokeExpr.getArg(i))) { return true; }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * isVersionGuard checks whether u can handle the non device specific issue, i.e. it reads a field of
+     * android.os.Build$VERSION, or developers use a function to check api, in this case, we only consider
+     * 1-depth invoking
+     *
+     * @param u the unit
+     * @return  true if u can be an api level guard
+     */
+    public boolean isVersionGuard(Unit u) {
+        if (!needCheckVersion || !(u instanceof Stmt)) { return false; }
+        Stmt s = (Stmt) u;
+
+        if (s.containsInvokeExpr()) {
+            SootMethod callee;
+            try {
+                callee = s.getInvokeExpr().getMethod();
+            } catch (Exception e) {
+                return false;
+            }
+
+            Boolean checked = versionCallees.get(callee);
+            if (null == checked) {
+                checked = checksVersion(callee);
+                versionCallees.put(callee, checked);
+            }
+            return checked;
+        }
+
+        return readsVersion(s) || mentionsVersion(s.toString());
+    }
+
+    // checksVersion checks whether a non-invoking unit of callee reads the version
+    private boolean checksVersion(SootMethod callee) {
+        try {
+            for (Unit u : callee.getActiveBody().getUnits()) {
+                if (!(u instanceof Stmt)) { continue; }
+                if (((Stmt) u).containsInvokeExpr()) { continue; }
+                if (readsVersion((Stmt) u) || mentionsVersion(u.toString())) { return true; }
+            }
+        } catch (Exception e) {
+            // do nothing, some method may have no body, and a RuntimeException will be thrown
+        }
+        return false;
+    }
+
+    // readsVersion checks whether s reads a field of android.os.Build$VERSION, android.os.Build$VERSION_CODES,
+    // or android.os.Build TIME
+    private static boolean readsVersion(Stmt s) {
+        if (!s.containsFieldRef()) { return false; }
+
+        SootFieldRef f = s.getFieldRef().getFieldRef();
+        return isFieldOf(f, BUILD_VERSION, null) ||
+                isFieldOf(f, BUILD_VERSION_CODES, null) ||
+                isFieldOf(f, BUILD, TIME_FIELDS);
+    }
+
+    // mentionsDevice checks whether the text of a unit mentions a device field, or a bad device name ignoring case
+    private boolean mentionsDevice(String text) {
+        for (String field : DEVICE_FIELDS) {
+            if (text.contains(field)) { return true; }
+        }
+        for (String device : badDevices) {
+            if (containsIgnoreCase(text, device)) { return true; }
+        }
+        return false;
+    }
+
+    // mentionsVersion checks whether the text of a unit mentions VERSION, SDK or TIME ignoring case,
+    // e.g. SDK_INT and VERSION_CODES
+    private static boolean mentionsVersion(String text) {
+        return containsIgnoreCase(text, "VERSION") || containsIgnoreCase(text, "SDK") || containsIgnoreCase(text, "TIME");
+    }
+
+    // containsIgnoreCase checks whether s contains part, ignoring case
+    private static boolean containsIgnoreCase(String s, String part) {
+        for (int i = 0; i + part.length() <= s.length(); i ++) {
+            if (s.regionMatches(true, i, part, 0, part.length())) { return true; }
+        }
+        return false;
+    }
+
+    // isFieldOf checks whether f is declared in clazz, and named one of names, any name if names is null
+    private static boolean isFieldOf(SootFieldRef f, String clazz, Set<String> names) {
+        return clazz.equals(f.declaringClass().getName()) && (null == names || names.contains(f.name()));
+    }
+
+    // containsBadDevice checks whether v is a string constant containing a bad device name, ignoring case
+    private boolean containsBadDevice(Value v) {
+        if (!(v instanceof StringConstant)) { return false; }
+
+        String s = ((StringConstant) v).value;
+        for (String device : badDevices) {
+            if (containsIgnoreCase(s, device)) { return true; }
+        }
+        return false;
+    }
+}
@@ -5,18 +5,20 @@ import org.slf4j.LoggerFactory;
 import simonlee.elegant.ELEGANT;
 import simonlee.elegant.environ.Environ;
 import simonlee.elegant.finder.AbstractFinder;
+import simonlee.elegant.finder.AnalysisContext;
 import simonlee.elegant.finder.CallSites;
 import simonlee.elegant.models.ApiContext;
 import simonlee.elegant.models.api.ApiMethod;
-import simonlee.elegant.utils.MultiTree;
 import simonlee.elegant.utils.Soots;
-import simonlee.elegant.utils.Strings;
 import soot.*;
 import soot.jimple.*;
 import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
 import soot.jimple.toolkits.callgraph.CallGraph;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * the core algorithm of PlainFinder:
@@ -26,67 +28,62 @@ import java.util.*;
  *       continue
  *     fi
  *
- *     callSitesTree = create_Tree(model)                # creation
- *     callSitesTree = prune_Tree(callSitesTree, model)  # pruning
- *     issues = genPathes_Tree(callSitesTree, model)     # generating
- *
- *     emitIssue all issues
+ *     callerGraph = create_Graph(model)                 # creation, once per api signature
+ *     pruned = prune_Graph(callerGraph, model)          # pruning
+ *     genPathes_Graph(pruned, model)                    # generating, emitIssue each issue lazily
  *   done
  *
- *   function create_Tree(callgraph, api) {
- *     root = new Root({ caller: api })
- *
- *     clarify all call sites of api by every call site's method
- *     add all methods to root as root.method
+ *   function create_Graph(callgraph, api)
+ *     root = new Node(api)
+ *     queue = Queue(root)
  *
- *     foreach method m in root.methods do
- *       childnode = create_Tree(callgraph, m)
- *       append childnode to root as a child node
- *     done
- *   done
- *
- *   function prune_Tree(t)
- *     queue = Queue(t.root)
- *
- *     # we use BFS to traverse the tree
+ *     # we use BFS, so that each method is a single node
  *     while queue is not empty do
  *       node = queue.deque()
- *       foreach child node c in node.getChildren() do
- *         queue.enque(c)
+ *       clarify all call sites of node.method by every call site's method
+ *       foreach method m do
+ *         add edge (node, m, call sites) to the graph
+ *         if m is new and node.level < K then
+ *           queue.enque(new Node(m, node.level + 1))
+ *         fi
  *       done
+ *     done
  *
- *       foreach call site cs in node.getCallSites() do
+ *     condense strongly connected components, i.e. recursive calls
+ *   done
+ *
+ *   function prune_Graph(g)
+ *     # we use BFS to traverse the graph from the api
+ *     foreach edge e reached from g.root do
+ *       foreach call site cs in e do
+ *         guards = dominating if stmts of cs and their latest definitions
+ *         if (some guard s in guards can fix issue) then
+ *           delete cs in e
+ *           continue
+ *         fi
  *         slicing = runBackwardSlicing(cs)
- *         foreach slice s in slicing do
- *           if (s can fix issue) then
- *             delete cs in node
- *             break
- *           fi
- *         done
+ *         if (some slice s in slicing can fix issue) then
+ *           delete cs in e
+ *         fi
  *       done
- *
- *       if node.getCallSites() == empty then
- *         while 1 == node.getParent().getChildren().size() and node.getParent() != t.root do
- *           node = node.getParent()
- *         done
- *         delete node in t
- *       fi
+ *       traverse e.caller only if e has call sites left
  *     done
- *   done
  *
- *   function genPathes_Tree(t)
- *     pathes = []
+ *     keep only methods that can reach an entry, i.e. a method without callers
+ *   done
  *
- *     foreach child node n in t.getChlidren do
- *       genPathes_Tree(n)
- *         .map(p, pathes.add(p.clone().append(t.caller)))
+ *   function genPathes_Graph(g)
+ *     foreach path p from g.root to an entry do
+ *       foreach chain c of call sites of p (Cartesian Product) do
+ *         if count(c.first) < MAX_CALL_CHAINS then
+ *           emitIssue c, sharing its tail with other chains
+ *         fi
+ *       done
  *     done
- *
- *     return pathes
  *   done
  *
  */
-public class PFinder extends AbstractFinder {
+public class PFinder extends AbstractFinder<PFinder.PContext> {
 
     private Logger logger = LoggerFactory.getLogger(PFinder.class);
 
@@ -96,48 +93,93 @@ public class PFinder extends AbstractFinder {
     private static final int NON_DEVICE_SPECIFIC_FIC_ISSUE = 0x2;
     private static final int BOTH_FIC_ISSUE                = DEVICE_SPECIFIC_FIC_ISSUE | NON_DEVICE_SPECIFIC_FIC_ISSUE;
 
-    // callSitesTree is a call site tree for the detected model
-    private MultiTree<CallSites> callSitesTree;
-    // issueType is the fic issue type of the detected model
-    private int issueType = NO_FIC_ISSUES;
+    // PContext is the analysis context of a model
+    static class PContext extends AnalysisContext {
+
+        // prunedGraph is the caller graph of the api pruned for the detected model
+        private CallerGraph.Pruned prunedGraph;
+        // issueType is the fic issue type of the detected model
+        private int issueType = NO_FIC_ISSUES;
+        // group is the group of models sharing the same api with the detected model
+        private PGroup group;
+        // guardMatcher checks whether a unit can handle the issue of the detected model
+        private GuardMatcher guardMatcher;
+
+        PContext(ApiContext model) {
+            super(model);
+        }
+
+    }
+
+    // PGroup is shared by all models of the same api, i.e. models with the same api signature,
+    // the caller graph of the api is computed once for the whole group, and each model prunes the
+    // graph by its own issue type and context, slicing is shared by Soots' backward slicing cache
+    static class PGroup {
+
+        // callerGraph is the caller graph of the api, it is never changed, and null if it failed
+        private CallerGraph callerGraph;
+        // created marks whether callerGraph is created
+        private boolean created = false;
+        // pending is the number of models of this group that are not finished yet
+        private AtomicInteger pending = new AtomicInteger(0);
+
+    }
+
+    // groups of models, keyed by api signature
+    private Map<String, PGroup> groups = new ConcurrentHashMap<>();
+
+    // number of call sites resolved by each tier of validation, i.e. guarded by a dominating
+    // IfStmt or its latest definitions, guarded by the backward slicing, and not guarded
+    private AtomicLong guardedByIfStmts = new AtomicLong(0);
+    private AtomicLong guardedBySlicing = new AtomicLong(0);
+    private AtomicLong notGuarded       = new AtomicLong(0);
 
     public PFinder(ELEGANT elegant, Set<ApiContext> models) {
         super(elegant, models);
+
+        // plan the work by grouping models by their api signature
+        for (ApiContext model : models) {
+            if (model.getApi() instanceof ApiMethod) {
+                groups.computeIfAbsent(((ApiMethod) model.getApi()).getSignature(), k -> new PGroup())
+                        .pending.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    protected PContext createContext(ApiContext model) {
+        return new PContext(model);
     }
 
-    // We will use create_Tree in detection phase
+    // We will use create_Graph in detection phase
     @Override
-    protected boolean detect(ApiContext model) {
+    protected boolean detect(PContext context) {
+        ApiContext model = context.getModel();
+
         // TODO - eliminate this condition to support iface and field
         if (!(model.getApi() instanceof ApiMethod)) {
             return false;
         }
 
-        issueType = ficIssueGetType(model);
+        context.issueType = ficIssueGetType(model);
 
-        if (NO_FIC_ISSUES == issueType) {
+        if (NO_FIC_ISSUES == context.issueType) {
             return false;
         }
 
-        try {
-            ApiMethod  apiMethod  = (ApiMethod) model.getApi();
-            SootMethod sootMethod = Scene.v().getMethod(apiMethod.getSignature());
-
-            // we create a virtual node as root, meaning that we mark the api as a caller,
-            // then we will use it to compute its children, thus its call sites
-            CallSites root = new CallSites(null, sootMethod);
-            // compute its children, thus its call sites
-            callSitesTree = new MultiTree<>(computeCallSitesRoot(new MultiTree.Node<>(root), 0));
-        } catch (Exception e) {
-            callSitesTree = null;
-        }
+        ApiMethod apiMethod = (ApiMethod) model.getApi();
+
+        context.group        = groups.get(apiMethod.getSignature());
+        context.guardMatcher = GuardMatcher.compile(model);
 
-        return null != callSitesTree;
+        return null != createCallerGraph(context.group, apiMethod);
     }
 
-    // We will use prune_Tree in validation phase
+    // We will use prune_Graph in validation phase
     @Override
-    protected boolean validate(ApiContext model) {
+    protected boolean validate(PContext context) {
+        ApiContext model = context.getModel();
+
         // TODO - eliminate this condition to support iface and field
         if (!(model.getApi() instanceof ApiMethod)) {
             return false;
@@ -146,77 +188,124 @@ public class PFinder extends AbstractFinder {
         CallGraph    cg   = this.elegant.getCallGraph();
         IInfoflowCFG icfg = this.elegant.getInterproceduralCFG();
 
-        List<MultiTree.Node<CallSites>> nodesToBeCut     = new ArrayList<>();
-        List<Unit>                      callSitesToBeCut = new ArrayList<>();
-        SootMethod                      caller           = null;
-        Set<Unit>                       callSites        = null;
+        // a call site is fixed if any slice in its slicing can handle the issue
+        context.prunedGraph = context.group.callerGraph.prune(
+                (caller, callSite) -> isGuarded(context, caller, callSite, cg, icfg));
+
+        // if all call sites of the api are cut, then we know that, all issues are fixed
+        return !context.prunedGraph.isEmpty();
+    }
+
+    @Override
+    public void analyse() {
+        super.analyse();
+
+        logger.info(String.format("call sites guarded by if stmts: %d, by slicing: %d, not guarded: %d",
+                guardedByIfStmts.get(), guardedBySlicing.get(), notGuarded.get()));
+    }
+
+    // We will use genPathes_Graph in generation phase
+    @Override
+    protected void generate(PContext context) {
+        ApiContext model = context.getModel();
 
-        // 1. first cut all fixed call sites
-        MultiTree.Node<CallSites>        root  = callSitesTree.getRoot();
-        Queue<MultiTree.Node<CallSites>> queue = new LinkedList<>();
+        // TODO - eliminate this condition to support iface and field
+        if (!(model.getApi() instanceof ApiMethod)) {
+            return;
+        }
 
-        queue.offer(root);
-        while (!queue.isEmpty()) {
-            // we will firstly do pruning, and then add its children to queue accordingly
-            MultiTree.Node<CallSites> currentNode = queue.poll();
+        // important models skip the validation phase, so nothing is pruned
+        CallerGraph        callerGraph = context.group.callerGraph;
+        CallerGraph.Pruned prunedGraph = null != context.prunedGraph
+                ? context.prunedGraph
+                : callerGraph.prune((caller, callSite) -> false);
+
+        // search issues in each path of the pruned graph, and emitIssue them as soon as they are found
+        new IssueEmitter(model, prunedGraph, callerGraph, this.elegant.getMaxCallChains()).emitAll();
+    }
+
+    // release the group once all its models are finished
+    @Override
+    protected void finish(PContext context) {
+        if (!(context.getModel().getApi() instanceof ApiMethod)) {
+            return;
+        }
 
-            // skip the virtual node root, root is the model itself
-            if (currentNode.equals(root)) {
-                currentNode.getChildren().forEach(c -> queue.offer(c));
-                continue;
+        PGroup group = groups.get(((ApiMethod) context.getModel().getApi()).getSignature());
+        if (null != group && 0 == group.pending.decrementAndGet()) {
+            groups.remove(((ApiMethod) context.getModel().getApi()).getSignature());
+        }
+    }
+
+    // createCallerGraph creates the caller graph of the api of group, it is created only once
+    // per group, even if models of the group are detected concurrently
+    private CallerGraph createCallerGraph(PGroup group, ApiMethod apiMethod) {
+        synchronized (group) {
+            if (group.created) {
+                return group.callerGraph;
             }
 
-            caller    = currentNode.getData().getCaller();
-            callSites = currentNode.getData().getCallSites();
-            callSitesToBeCut.clear();
-
-            for (Unit callSite : callSites) {
-                Set<Unit> slicing = Soots.findBackwardSlicing(callSite, caller, cg, icfg, this.elegant.getD3Algo());
-                for (Unit aSlicing : slicing) {
-                    if (canHandleIssue(model, issueType, aSlicing)) {
-                        callSitesToBeCut.add(callSite);
-                        break;
-                    }
-                }
+            try {
+                SootMethod sootMethod = Scene.v().getMethod(apiMethod.getSignature());
+
+                // we firstly clarify all call sites of each method by the caller method
+                group.callerGraph = CallerGraph.build(sootMethod, Environ.ENV_K_INDIRECT_CALLER,
+                        callee -> Soots.findCallSites(
+                                callee,
+                                Scene.v().getCallGraph(),
+                                Scene.v().getClasses(),
+                                this.elegant.getD3Algo()));
+            } catch (Exception e) {
+                group.callerGraph = null;
             }
 
-            if (callSitesToBeCut.size() == callSites.size()) {
-                // current node will be cut, we don't need to traverse its children
-                callSites.clear();
-                nodesToBeCut.add(currentNode);
-            } else {
-                for (Unit u : callSitesToBeCut) { callSites.remove(u); }
-                currentNode.getChildren().forEach(c -> queue.offer(c));
+            group.created = true;
+            return group.callerGraph;
+        }
+    }
+
+    // isGuarded checks whether callSite in caller is guarded, i.e. some slice can handle the issue, most
+    // guards are an IfStmt dominating the call site in the same method, so we firstly try dominating
+    // IfStmts and their latest definitions, and only escalate to the inter-procedural backward slicing
+    // if none of them can handle the issue, the former is a subset of the latter
+    private boolean isGuarded(PContext context, SootMethod caller, Unit callSite, CallGraph cg, IInfoflowCFG icfg) {
+        // 1. dominating IfStmts and their latest definitions
+        // dominator trees are cached per method, so guards are cheap to find again for each model
+        for (Unit guard : findGuards(callSite, caller, icfg)) {
+            if (canHandleIssue(context, guard)) {
+                guardedByIfStmts.incrementAndGet();
+                return true;
             }
         }
 
-        // 2. cut all fixed node
-        for (MultiTree.Node<CallSites> n : nodesToBeCut) {
-            // parent has no other children
-            while (1 == n.getParent().getChildren().size() && !n.getParent().equals(callSitesTree.getRoot())) {
-                n = n.getParent();
+        // 2. the inter-procedural backward slicing
+        Set<Unit> slicing = Soots.findBackwardSlicing(callSite, caller, cg, icfg, this.elegant.getD3Algo());
+        for (Unit aSlicing : slicing) {
+            if (canHandleIssue(context, aSlicing)) {
+                guardedBySlicing.incrementAndGet();
+                return true;
             }
-            callSitesTree.remove(n.getData());
         }
 
-        // if all children of root is cut, then we know that, all issues are fixed
-        return 0 != callSitesTree.getRoot().getChildren().size();
+        notGuarded.incrementAndGet();
+        return false;
     }
 
-    // We will use genPathes_Tree in generation phase
-    @Override
-    protected void generate(ApiContext model) {
-        // TODO - eliminate this condition to support iface and field
-        if (!(model.getApi() instanceof ApiMethod)) {
-            return;
-        }
+    // findGuards finds all IfStmts dominating callSite in caller, and the latest definitions of values in their conditions
+    private List<Unit> findGuards(Unit callSite, SootMethod caller, IInfoflowCFG icfg) {
+        List<Unit> guards = new ArrayList<>();
 
-        // search issues in call sites tree
-        List<PIssue> pIssues = this.searchIssuesInCallSitesNode(
-                callSitesTree.getRoot(), callSitesTree.getRoot(), model);
+        for (Unit d : Soots.findDominators(callSite, caller, icfg)) {
+            if (!(d instanceof IfStmt)) { continue; }
+
+            guards.add(d);
+            for (ValueBox box : ((IfStmt) d).getCondition().getUseBoxes()) {
+                Unit definition = Soots.findLatestDefinition(box.getValue(), d, caller);
+                if (null != definition) { guards.add(definition); }
+            }
+        }
 
-        // emitIssue the issues found
-        pIssues.forEach(i -> this.elegant.emitIssue(i));
+        return guards;
     }
 
     // ficIssueGetType checks whether the call site is ficable i.e. may generate FIC issues
@@ -234,167 +323,97 @@ public class PFinder extends AbstractFinder {
         return result;
     }
 
-    // computeCallSitesRoot computes all call sites of calleeNode, thus find all its children,
-    // this is not a pure function, because calleeNode will be added its children
-    private MultiTree.Node<CallSites> computeCallSitesRoot(MultiTree.Node<CallSites> calleeNode, int level) {
-        if (null == calleeNode || null == calleeNode.getData()) { return null; }
-
-        SootMethod callee = calleeNode.getData().getCaller();
-
-        // we firstly clarify all its call sites by the caller method
-        Map<SootMethod, CallSites> callers = Soots.findCallSites(
-                callee,
-                Scene.v().getCallGraph(),
-                Scene.v().getClasses(),
-                this.elegant.getD3Algo());
-
-        // then we create a node for each caller method, and compute its call sites if necessary
-        for (Map.Entry<SootMethod, CallSites> entry : callers.entrySet()) {
-            MultiTree.Node<CallSites> callSitesNode = new MultiTree.Node<>(entry.getValue());
-
-            // computing done until the K-INDIRECT-CALLER
-            if (level < Environ.ENV_K_INDIRECT_CALLER) {
-                computeCallSitesRoot(callSitesNode, level + 1);
-            }
-
-            calleeNode.addChild(callSitesNode);
-        }
-
-        return calleeNode;
-    }
-
     // canHandleIssue checks whether the stmt can handle the specific issue
-    private boolean canHandleIssue(ApiContext model, int issueType, Unit aSlicing) {
-        switch (issueType) {
+    private boolean canHandleIssue(PContext context, Unit aSlicing) {
+        switch (context.issueType) {
             case NO_FIC_ISSUES:
                 return true;
             case NON_DEVICE_SPECIFIC_FIC_ISSUE:
-                return canHandleNonDeviceSpecificIssue(model, aSlicing);
+                return context.guardMatcher.isVersionGuard(aSlicing);
             case DEVICE_SPECIFIC_FIC_ISSUE:
-                return canHandleDeviceSpecificIssue(model, aSlicing);
+                return context.guardMatcher.isDeviceGuard(aSlicing);
             case BOTH_FIC_ISSUE:
-                return canHandleDeviceSpecificIssue(model, aSlicing) &&
-                        canHandleNonDeviceSpecificIssue(model, aSlicing);
+                return context.guardMatcher.isDeviceGuard(aSlicing) &&
+                        context.guardMatcher.isVersionGuard(aSlicing);
             default:
-                logger.warn("Illegal issue type " + issueType);
+                logger.warn("Illegal issue type " + context.issueType);
                 return false;
         }
     }
 
-    // canHandleDeviceSpecificIssue checks whether the stmt can handle the device specific issue
-    private boolean canHandleDeviceSpecificIssue(ApiContext model, Unit aSlicing) {
-        String[]  devices = model.getContext().getBadDevices();
-
-        String s = aSlicing.toString();
-        if (Strings.contains(s,
-                "android.os.Build: java.lang.String BOARD",
-                "android.os.Build: java.lang.String BRAND",
-                "android.os.Build: java.lang.String DEVICE",
-                "android.os.Build: java.lang.String PRODUCT",
-                "android.os.Build: java.lang.String MANUFACTURER",
-                "android.os.Build: java.lang.String MODEL",
-                "BOARD",
-                "BRAND",
-                "DEVICE",
-                "PRODUCT",
-                "MANUFACTURER",
-                "MODEL")) {
-            return true;
-        } else {
-            for (String device : devices) {
-                if (s.toLowerCase().contains(device.toLowerCase())) {
-                    return true;
-                }
+    // IssueEmitter lazily enumerates call chains of all paths in a pruned graph, and emits an issue
+    // for each chain as soon as it is found, chains are limited per call site of the api
+    private class IssueEmitter {
+
+        private final ApiContext         model;
+        private final CallerGraph.Pruned prunedGraph;
+        private final PIssue.CalleePoint calleePoint;
+        private final int                maxCallChains;
+
+        // callerPoints, as a cache, stores the caller point of each call site
+        private final Map<Unit, PIssue.CallerPoint> callerPoints = new HashMap<>();
+        // chains counts emitted chains of each call site of the api
+        private final Map<Unit, Integer>            chains       = new HashMap<>();
+        // full is the number of call sites of the api whose chains reach the limit
+        private int                                 full         = 0;
+        // total is the number of call sites of the api
+        private int                                 total        = 0;
+
+        IssueEmitter(ApiContext model, CallerGraph.Pruned prunedGraph, CallerGraph callerGraph, int maxCallChains) {
+            this.model         = model;
+            this.prunedGraph   = prunedGraph;
+            this.calleePoint   = new PIssue.CalleePoint(callerGraph.getRoot().getMethod().getSignature());
+            this.maxCallChains = maxCallChains;
+
+            for (CallSites e : callerGraph.getRoot().getCallers()) {
+                total += prunedGraph.getCallSites(e).size();
             }
         }
 
-        return false;
-    }
-
-    // canHandleNonDeviceSpecificIssue checks whether the stmt can handle the non device specific issue
-    private boolean canHandleNonDeviceSpecificIssue(ApiContext model, Unit aSlicing) {
-        if (!(aSlicing instanceof Stmt)) {
-            return false;
-        }
-
-        // developers may use a function to check api, in this case, we only consider 1-depth invoking
-        if (((Stmt) aSlicing).containsInvokeExpr()) {
-            try {
-                List<Unit> units = new ArrayList<>(((Stmt) aSlicing).getInvokeExpr().getMethod().getActiveBody().getUnits());
-                for (Unit u : units) {
-                    if (!(u instanceof Stmt)) { continue; }
-                    if (((Stmt) u).containsInvokeExpr()) { continue; }
-                    if (canHandleNonDeviceSpecificIssue(model, u)) { return true; }
+        // emitAll emits issues of all paths, it stops once all call sites of the api reach the limit
+        void emitAll() {
+            prunedGraph.forEachPath(path -> {
+                for (Unit u : prunedGraph.getCallSites(path.get(0))) {
+                    int emitted = chains.getOrDefault(u, 0);
+                    if (emitted >= maxCallChains) { continue; }
+
+                    emitted += emitChains(path, 1, CallerChain.EMPTY.prepend(callerPointOf(path.get(0), u)),
+                            maxCallChains - emitted);
+                    chains.put(u, emitted);
+                    if (emitted >= maxCallChains) { full ++; }
                 }
-                return false;
-            } catch (Exception e) {
-                return false;
-            }
-        } else {
-            return (aSlicing instanceof Stmt) &&
-                    (model.needCheckApiLevel() || model.needCheckSystemVersion()) &&
-                    Strings.containsIgnoreCase(aSlicing.toString(),
-                            "android.os.Build$VERSION: int SDK_INT",
-                            "android.os.Build$VERSION: java.lang.String SDK",
-                            "android.os.Build: long TIME",
-                            "android.os.Build$VERSION_CODES",
-                            "VERSION_CODES",
-                            "VERSION",
-                            "SDK_INT",
-                            "SDK",
-                            "TIME");
+                return full < total;
+            });
         }
 
-    }
-
-    // searchIssuesInCallSitesNode recursively searches issues of a call sites node
-    private List<PIssue> searchIssuesInCallSitesNode(MultiTree.Node<CallSites> root,
-                                                     MultiTree.Node<CallSites> n,
-                                                     ApiContext model) {
-        final SootMethod              caller       = n.getData().getCaller();
-        final Set<Unit>               callSites    = n.getData().getCallSites();
-        final List<PIssue.CallerPoint> callerPoints = new ArrayList<>();
-        final List<PIssue> pIssues = new ArrayList<>();
-
-        callSites.forEach(u -> {
-            callerPoints.add(new PIssue.CallerPoint(
-                    caller.getDeclaringClass().getName(),
-                    u.getJavaSourceStartLineNumber(),
-                    u.getJavaSourceStartColumnNumber(),
-                    caller.getName()));
-        });
-
-        if (0 == n.getChildren().size()) {
-            callerPoints.forEach(si -> {
+        // emitChains emits at most quota chains extending chain by edges of path from i, returns number of emitted
+        private int emitChains(List<CallSites> path, int i, CallerChain chain, int quota) {
+            if (i == path.size()) {
+                // chains are shared while paths are enumerated, each issue gets its own copy
                 PIssue pIssue = new PIssue(model);
-                pIssue.addCallPoint(si);
-                pIssues.add(pIssue);
-            });
-        } else {
-            for (MultiTree.Node<CallSites> c : n.getChildren()) {
-                List<PIssue> issuesOfC = searchIssuesInCallSitesNode(root, c, model);
-                if (n.equals(root)) {
-                    // root is a virtual node, just add all issues of its children
-                    pIssues.addAll(issuesOfC);
-                    pIssues.forEach(i -> i.setCalleePoint(new PIssue.CalleePoint(caller.getSignature())));
-                } else {
-                    // new issues are issuesOfC X subIssues (Cartesian Product)
-                    callerPoints.forEach(si -> {
-                        List<PIssue> clonePIssues = new ArrayList<> (issuesOfC.size());
-                        issuesOfC.forEach(i -> {
-                            try {
-                                clonePIssues.add((PIssue) i.clone());
-                            } catch (CloneNotSupportedException e) {
-                                // do nothing here
-                            }
-                        });
-                        clonePIssues.forEach(ci -> ci.addCallPoint(si));
-                        pIssues.addAll(clonePIssues);
-                    });
-                }
+                pIssue.setCallerPoints(chain);
+                pIssue.setCalleePoint(calleePoint);
+                elegant.emitIssue(pIssue);
+                return 1;
+            }
+
+            int emitted = 0;
+            for (Unit u : prunedGraph.getCallSites(path.get(i))) {
+                if (emitted >= quota) { break; }
+                emitted += emitChains(path, i + 1, chain.prepend(callerPointOf(path.get(i), u)), quota - emitted);
             }
+
+            return emitted;
+        }
+
+        // callerPointOf gets the caller point of call site u of edge
+        private PIssue.CallerPoint callerPointOf(CallSites edge, Unit u) {
+            return callerPoints.computeIfAbsent(u, k -> new PIssue.CallerPoint(
+                    edge.getCaller().getDeclaringClass().getName(),
+                    k.getJavaSourceStartLineNumber(),
+                    k.getJavaSourceStartColumnNumber(),
+                    edge.getCaller().getName()));
         }
 
-        return pIssues;
     }
 }
@@ -4,7 +4,7 @@ import simonlee.elegant.models.ApiContext;
 import simonlee.elegant.finder.Issue;
 import simonlee.elegant.utils.CallPoint;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public class PIssue extends Issue implements Cloneable {
@@ -40,7 +40,7 @@ public class PIssue extends Issue implements Cloneable {
     }
 
     private CalleePoint calleePoint;
-    private List<CallerPoint> callerPoints = new LinkedList<>();
+    private List<CallerPoint> callerPoints = new ArrayList<>();
 
     public PIssue(ApiContext model) {
         super(model);
@@ -50,8 +50,13 @@ public class PIssue extends Issue implements Cloneable {
         return callerPoints;
     }
 
+    /**
+     * setCallerPoints sets a copy of callerPoints, so that the issue owns a mutable list
+     *
+     * @param callerPoints the caller points, from the outermost caller to the caller of the api
+     */
     public void setCallerPoints(List<CallerPoint> callerPoints) {
-        this.callerPoints = callerPoints;
+        this.callerPoints = new ArrayList<>(callerPoints);
     }
 
     public void addCallPoint(CallerPoint s) {
@@ -69,7 +74,7 @@ public class PIssue extends Issue implements Cloneable {
     @Override
     public Object clone() throws CloneNotSupportedException {
         PIssue newPIssue = (PIssue) super.clone();
-        newPIssue.callerPoints = (List<CallerPoint>) ((LinkedList)this.callerPoints).clone();
+        newPIssue.callerPoints = new ArrayList<>(this.callerPoints);
         return newPIssue;
     }
 
@@ -2,8 +2,10 @@ package simonlee.elegant.finder.reflectionfinder;
 
 import simonlee.elegant.ELEGANT;
 import simonlee.elegant.finder.AbstractFinder;
+import simonlee.elegant.finder.AnalysisContext;
 import simonlee.elegant.models.ApiContext;
 import simonlee.elegant.models.api.ApiMethod;
+import simonlee.elegant.utils.DefUseIndex;
 import simonlee.elegant.utils.Soots;
 import simonlee.elegant.utils.Strings;
 import soot.*;
@@ -14,24 +16,35 @@ import soot.toolkits.graph.BriefUnitGraph;
 
 import java.util.*;
 
-public class RFinder extends AbstractFinder {
+public class RFinder extends AbstractFinder<RFinder.RContext> {
 
     // REFLECTION_GET_METHOD_SIGNATURE is the soot signature of class.getMethod
     private static String REFLECTION_GET_METHOD_SIGNATURE =
             "<java.lang.Class: java.lang.reflect.Method getMethod(java.lang.String,java.lang.Class[])>";
     // edges stores all edges calling into REFLECTION_GET_METHOD_SIGNATURE
     private Set<Edge> edges;
-    // detectedEdges stores detected edges in the detection phase, which will be processed in
-    private Set<Edge> detectedEdges;
-    // validatedEdges stores all validated edges in validation phase, that will be emitted in generation phase
-    private Set<Edge> validatedEdges;
+    // claimedEdges stores all edges detected by previous models, an edge is generated for its first model only
+    private Set<Edge> claimedEdges;
+
+    // RContext is the analysis context of a model
+    static class RContext extends AnalysisContext {
+
+        // detectedEdges stores detected edges in the detection phase, which will be processed in
+        private Set<Edge> detectedEdges  = new HashSet<>();
+        // validatedEdges stores all validated edges in validation phase, that will be emitted in generation phase
+        private Set<Edge> validatedEdges = new HashSet<>();
+
+        RContext(ApiContext model) {
+            super(model);
+        }
+
+    }
 
     public RFinder(ELEGANT elegant, Set<ApiContext> models) {
         super(elegant, models);
 
-        edges          = new HashSet<>();
-        detectedEdges  = new HashSet<>();
-        validatedEdges = new HashSet<>();
+        edges        = new HashSet<>();
+        claimedEdges = new HashSet<>();
 
         // find all edges
         Iterator<Edge> it = Scene.v().getCallGraph().edgesInto(Scene.v().getMethod(REFLECTION_GET_METHOD_SIGNATURE));
@@ -39,7 +52,15 @@ public class RFinder extends AbstractFinder {
     }
 
     @Override
-    protected boolean detect(ApiContext model) {
+    protected RContext createContext(ApiContext model) {
+        return new RContext(model);
+    }
+
+    @Override
+    protected boolean detect(RContext context) {
+        ApiContext model         = context.getModel();
+        Set<Edge>  detectedEdges = context.detectedEdges;
+
         // TODO - eliminate this condition to support iface and field
         if (!(model.getApi() instanceof ApiMethod)) {
             return false;
@@ -47,8 +68,8 @@ public class RFinder extends AbstractFinder {
 
         ApiMethod callee = (ApiMethod) model.getApi();
 
-        // clear all pre-detected, and to detect new edges
-        detectedEdges.clear();
+        // edges are shared by all models, which are detected concurrently, so we never remove
+        // detected edges from it, instead, edges detected by previous models are claimed in finish
         for (Edge edge : edges) {
             Unit       callSiteUnit = edge.srcUnit();
             SootMethod caller       = edge.src();
@@ -79,21 +100,20 @@ public class RFinder extends AbstractFinder {
             }
         }
 
-        // remove all edges that is detected
-        this.edges.removeAll(detectedEdges);
-
         return 0 != detectedEdges.size();
     }
 
     @Override
-    protected boolean validate(ApiContext model) {
+    protected boolean validate(RContext context) {
+        ApiContext model          = context.getModel();
+        Set<Edge>  validatedEdges = context.validatedEdges;
+
         // TODO - eliminate this condition to support iface and field
         if (!(model.getApi() instanceof ApiMethod)) {
             return false;
         }
 
-        validatedEdges.clear();
-        for (Edge edge : detectedEdges) {
+        for (Edge edge : context.detectedEdges) {
             Value      definedVar   = null;
             Unit       callSiteUnit = edge.srcUnit();
             SootMethod caller       = edge.src();
@@ -116,15 +136,15 @@ public class RFinder extends AbstractFinder {
 
                 // we must guarantee that the handler got by reflection is not null
                 boolean    fixed = true;
-                List<Unit> units = new ArrayList<>(body.getUnits());
-                int        index = units.indexOf(callSiteUnit);
+                DefUseIndex units = DefUseIndex.of(caller);
+                int         index = units.ordinalOf(callSiteUnit);
 
                 // get all try-catch blocks to get ready for try-catch checking
                 List<Trap> traps = new ArrayList<>(body.getTraps());
 
                 // traverse units after call site, guarantee that invoking of r9 is checked non-nullness
                 for (int i = index + 1; i < units.size(); i++) {
-                    Unit u = units.get(i);
+                    Unit u = units.unitAt(i);
 
                     // u does not invoke r9, skip it
                     if (!Strings.contains(u.toString(), definedVar.toString() + ".")) { continue; }
@@ -137,8 +157,8 @@ public class RFinder extends AbstractFinder {
                         for (Trap trap : traps) {
                             SootClass exceptionClass = trap.getException();
                             String exceptionJavaStyleName = exceptionClass.getJavaStyleName();
-                            int bidx = units.indexOf(trap.getBeginUnit());
-                            int eidx = units.indexOf(trap.getEndUnit());
+                            int bidx = units.ordinalOf(trap.getBeginUnit());
+                            int eidx = units.ordinalOf(trap.getEndUnit());
 
                             // this trap can catch u, and the exception to be caught
                             // is a NullPointerException or a NoSuchMethodException
@@ -171,13 +191,18 @@ public class RFinder extends AbstractFinder {
     }
 
     @Override
-    protected void generate(ApiContext model) {
+    protected void generate(RContext context) {
+        ApiContext model = context.getModel();
+
         // TODO - eliminate this condition to support iface and field
         if (!(model.getApi() instanceof ApiMethod)) {
             return ;
         }
 
-        for (Edge edge : validatedEdges) {
+        for (Edge edge : context.validatedEdges) {
+            // this edge is already detected by a previous model
+            if (claimedEdges.contains(edge)) { continue; }
+
             Unit       callSiteUnit = edge.srcUnit();
             SootMethod caller       = edge.src();
 
@@ -191,4 +216,10 @@ public class RFinder extends AbstractFinder {
         }
     }
 
+    @Override
+    protected void finish(RContext context) {
+        // claim all edges detected by this model, so that following models will not generate them
+        claimedEdges.addAll(context.detectedEdges);
+    }
+
 }
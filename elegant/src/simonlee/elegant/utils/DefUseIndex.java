@@ -0,0 +1,177 @@
+package simonlee.elegant.utils;
+
+import simonlee.elegant.environ.Environ;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.AssignStmt;
+import soot.jimple.IdentityStmt;
+import soot.jimple.IfStmt;
+
+import java.util.*;
+
+/**
+ * DefUseIndex indexes the units of a method by their ordinals in the unit chain, and, for each value,
+ * the ordinals of its definitions (IdentityStmt and AssignStmt) in ascending order. Thus definition
+ * queries are a lookup plus a binary search, instead of copying and scanning the whole unit chain.
+ *
+ * Indexes are built lazily, and cached per method for the whole run.
+ */
+public class DefUseIndex {
+
+    // defUseIndexCache, as a cache, stores the index of each method
+    private static LRUCache<SootMethod, DefUseIndex> defUseIndexCache =
+            new LRUCache<>(Environ.ENV_METHOD_CACHE_CAPACITY, DefUseIndex::size);
+
+    // units in the order of the unit chain
+    private Unit[] units;
+    // ordinals of units
+    private Map<Unit, Integer> ordinals;
+    // ordinals of the definitions of each value, in ascending order
+    private Map<Value, int[]> definitions;
+    // ordinals of all IfStmts, in ascending order
+    private int[] ifStmts;
+
+    private DefUseIndex(SootMethod m) {
+        Collection<Unit>          chain = m.getActiveBody().getUnits();
+        Map<Value, List<Integer>> defs  = new HashMap<>();
+        List<Integer>             ifs   = new ArrayList<>();
+
+        units    = chain.toArray(new Unit[0]);
+        ordinals = new HashMap<>(units.length * 2);
+
+        for (int i = 0; i < units.length; i ++) {
+            Unit u = units[i];
+            ordinals.put(u, i);
+
+            if (u instanceof IdentityStmt || u instanceof AssignStmt) {
+                Value v = u.getDefBoxes().get(0).getValue();
+                defs.computeIfAbsent(v, k -> new ArrayList<>(2)).add(i);
+            } else if (u instanceof IfStmt) {
+                ifs.add(i);
+            }
+        }
+
+        definitions = new HashMap<>(defs.size() * 2);
+        for (Map.Entry<Value, List<Integer>> entry : defs.entrySet()) {
+            definitions.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        ifStmts = toArray(ifs);
+    }
+
+    /**
+     * of gets the def-use index of method m, and builds it if it is not built yet
+     *
+     * @param m the method
+     * @return  the def-use index of m, or null if m has no body
+     */
+    public static DefUseIndex of(SootMethod m) {
+        if (null == m) { return null; }
+
+        return defUseIndexCache.get(m, k -> {
+            try {
+                return new DefUseIndex(k);
+            } catch (Exception e) {
+                // do nothing, some method may have no body, and a RuntimeException will be thrown
+                return null;
+            }
+        });
+    }
+
+    /**
+     * size gets the number of units
+     *
+     * @return the number of units
+     */
+    public int size() {
+        return units.length;
+    }
+
+    /**
+     * ordinalOf gets the ordinal of unit u in the unit chain
+     *
+     * @param u the unit
+     * @return  the ordinal of u, or -1 if u is not in this method
+     */
+    public int ordinalOf(Unit u) {
+        Integer i = ordinals.get(u);
+        return null == i ? -1 : i;
+    }
+
+    /**
+     * unitAt gets the unit at ordinal i
+     *
+     * @param i the ordinal
+     * @return  the unit at i
+     */
+    public Unit unitAt(int i) {
+        return units[i];
+    }
+
+    /**
+     * findLatestDefinition will find the latest definition unit of value v before unit u
+     *
+     * @param v the variable who wants to find its latest definition
+     * @param u the unit where the variable lives at
+     * @return  the latest definition unit of v, or null
+     */
+    public Unit findLatestDefinition(Value v, Unit u) {
+        int[] defs = definitions.get(v);
+        int   n    = countBefore(defs, ordinalOf(u));
+
+        return 0 == n ? null : units[defs[n - 1]];
+    }
+
+    /**
+     * findPreviousDefinitions will find all previous definitions unit of value v before unit u
+     *
+     * @param v the variable who wants to find its previous definitions
+     * @param u the unit where the variable lives at
+     * @return  the previous definitions unit of v
+     */
+    public Set<Unit> findPreviousDefinitions(Value v, Unit u) {
+        int[]     defs = definitions.get(v);
+        int       n    = countBefore(defs, ordinalOf(u));
+        Set<Unit> ret  = new HashSet<>(Math.max(2, n * 2));
+
+        for (int i = 0; i < n; i ++) {
+            ret.add(units[defs[i]]);
+        }
+
+        return ret;
+    }
+
+    /**
+     * findIfStmtsBefore will find all IfStmts before unit u
+     *
+     * @param u the unit
+     * @return  all IfStmts before u, in the order of the unit chain
+     */
+    public List<IfStmt> findIfStmtsBefore(Unit u) {
+        int          n   = countBefore(ifStmts, ordinalOf(u));
+        List<IfStmt> ret = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i ++) {
+            ret.add((IfStmt) units[ifStmts[i]]);
+        }
+
+        return ret;
+    }
+
+    // countBefore counts ordinals in sorted that are less than ordinal, no ordinals if ordinal is -1
+    private static int countBefore(int[] sorted, int ordinal) {
+        if (null == sorted || -1 == ordinal) { return 0; }
+
+        int i = Arrays.binarySearch(sorted, ordinal);
+        return i >= 0 ? i : -(i + 1);
+    }
+
+    // toArray converts a list of ordinals to an array
+    private static int[] toArray(List<Integer> list) {
+        int[] ret = new int[list.size()];
+        for (int i = 0; i < ret.length; i ++) {
+            ret[i] = list.get(i);
+        }
+        return ret;
+    }
+}
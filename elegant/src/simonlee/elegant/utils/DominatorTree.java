@@ -0,0 +1,250 @@
+package simonlee.elegant.utils;
+
+import simonlee.elegant.environ.Environ;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
+import soot.toolkits.graph.DirectedGraph;
+import soot.toolkits.graph.DominatorsFinder;
+import soot.toolkits.graph.MHGDominatorsFinder;
+import soot.toolkits.graph.MHGPostDominatorsFinder;
+
+import java.util.*;
+
+/**
+ * DominatorTree is the (post) dominator tree of the unit graph of a method, stored compactly as an
+ * immediate-dominator array indexed by unit ordinal. It is computed once per method using the
+ * algorithm of Cooper, Harvey and Kennedy, and all dominators of a unit are found by walking up
+ * the tree, instead of rebuilding the fixpoint of MHGDominatorsFinder on every query.
+ *
+ * A graph may have multiple heads, so a virtual root is added as the predecessor of all heads,
+ * it is never reported as a dominator. Like MHGDominatorsFinder, units unreachable from the heads
+ * are dominated by all units. With assertions enabled, each tree is checked against MHG's result.
+ */
+public class DominatorTree {
+
+    // dominatorTreeCache and postDominatorTreeCache, as caches, store the trees of each method
+    private static LRUCache<SootMethod, DominatorTree> dominatorTreeCache =
+            new LRUCache<>(Environ.ENV_METHOD_CACHE_CAPACITY, DominatorTree::size);
+    private static LRUCache<SootMethod, DominatorTree> postDominatorTreeCache =
+            new LRUCache<>(Environ.ENV_METHOD_CACHE_CAPACITY, DominatorTree::size);
+
+    // NONE marks a unit without immediate dominator, i.e. unreachable units
+    private static final int NONE = -1;
+
+    // units numbered, units[ordinals.get(u)] == u, the virtual root is numbered units.length
+    private Unit[]             units;
+    private Map<Unit, Integer> ordinals;
+    // idoms[i] is the ordinal of the immediate dominator of units[i]
+    private int[]              idoms;
+
+    private DominatorTree(DirectedGraph<Unit> graph, boolean post) {
+        int n = graph.size();
+
+        units    = new Unit[n];
+        ordinals = new HashMap<>(n * 2);
+        for (Unit u : graph) {
+            units[ordinals.size()] = u;
+            ordinals.put(u, ordinals.size());
+        }
+
+        // edges of the graph, reversed if we are computing post dominators
+        int root = n;
+        int[][] preds = new int[n + 1][];
+        int[][] succs = new int[n + 1][];
+        for (int i = 0; i < n; i ++) {
+            preds[i] = ordinalsOf(post ? graph.getSuccsOf(units[i]) : graph.getPredsOf(units[i]));
+            succs[i] = ordinalsOf(post ? graph.getPredsOf(units[i]) : graph.getSuccsOf(units[i]));
+        }
+        int[] heads = ordinalsOf(post ? graph.getTails() : graph.getHeads());
+        succs[root] = heads;
+        preds[root] = new int[0];
+        for (int h : heads) {
+            preds[h] = Arrays.copyOf(preds[h], preds[h].length + 1);
+            preds[h][preds[h].length - 1] = root;
+        }
+
+        // compute the reverse post order from the virtual root
+        int[] order     = new int[n + 1];
+        int[] postOrder = new int[n + 1];
+        int   count     = reversePostOrder(root, succs, order, postOrder);
+
+        // iterate until the immediate dominators are stable
+        int[] doms = new int[n + 1];
+        Arrays.fill(doms, NONE);
+        doms[root] = root;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int k = 1; k < count; k ++) {
+                int b       = order[k];
+                int newIdom = NONE;
+                for (int p : preds[b]) {
+                    if (NONE == doms[p]) { continue; }
+                    newIdom = NONE == newIdom ? p : intersect(p, newIdom, doms, postOrder);
+                }
+                if (doms[b] != newIdom) {
+                    doms[b] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+
+        idoms = Arrays.copyOf(doms, n);
+    }
+
+    /**
+     * dominatorsOf gets the dominator tree of method m in icfg, and builds it if it is not built yet
+     *
+     * @param m    the method
+     * @param icfg the icfg where the method lives at
+     * @return     the dominator tree of m
+     */
+    public static DominatorTree dominatorsOf(SootMethod m, IInfoflowCFG icfg) {
+        return dominatorTreeCache.get(m, k -> {
+            DirectedGraph<Unit> graph = icfg.getOrCreateUnitGraph(k);
+            DominatorTree tree = new DominatorTree(graph, false);
+            assert tree.agreesWith(new MHGDominatorsFinder<>(graph)) : "dominator tree of " + k + " differs from MHG's";
+            return tree;
+        });
+    }
+
+    /**
+     * postDominatorsOf gets the post dominator tree of method m in icfg, and builds it if it is not built yet
+     *
+     * @param m    the method
+     * @param icfg the icfg where the method lives at
+     * @return     the post dominator tree of m
+     */
+    public static DominatorTree postDominatorsOf(SootMethod m, IInfoflowCFG icfg) {
+        return postDominatorTreeCache.get(m, k -> {
+            DirectedGraph<Unit> graph = icfg.getOrCreateUnitGraph(k);
+            DominatorTree tree = new DominatorTree(graph, true);
+            assert tree.agreesWith(new MHGPostDominatorsFinder<>(graph)) : "post dominator tree of " + k + " differs from MHG's";
+            return tree;
+        });
+    }
+
+    /**
+     * size gets the number of units
+     *
+     * @return the number of units
+     */
+    public int size() {
+        return units.length;
+    }
+
+    /**
+     * getDominators gets all dominators of u, including u itself
+     *
+     * @param u the unit
+     * @return  all dominators of u, all units if u is unreachable, or an empty set if u is not in this tree
+     */
+    public Set<Unit> getDominators(Unit u) {
+        Integer i = ordinals.get(u);
+        if (null == i) { return new HashSet<>(); }
+        if (NONE == idoms[i]) { return new HashSet<>(Arrays.asList(units)); }
+
+        Set<Unit> dominators = new HashSet<>();
+        dominators.add(u);
+
+        // walk up the tree until the virtual root
+        for (int d = idoms[i]; NONE != d && d < units.length; d = idoms[d]) {
+            dominators.add(units[d]);
+        }
+
+        return dominators;
+    }
+
+    /**
+     * getImmediateDominator gets the immediate dominator of u
+     *
+     * @param u the unit
+     * @return  the immediate dominator of u, or null if u is a head, unreachable or not in this tree
+     */
+    public Unit getImmediateDominator(Unit u) {
+        Integer i = ordinals.get(u);
+        if (null == i) { return null; }
+
+        int d = idoms[i];
+        return NONE == d || d >= units.length ? null : units[d];
+    }
+
+    /**
+     * agreesWith checks this tree against the dominators found by finder on the same graph, i.e. the same
+     * dominators of each unit, and the same immediate dominator of each reachable unit, MHG picks an arbitrary
+     * one of the other unreachable units as the immediate dominator of an unreachable unit
+     *
+     * @param finder the dominators finder
+     * @return       true if both agree
+     */
+    public boolean agreesWith(DominatorsFinder<Unit> finder) {
+        for (int i = 0; i < units.length; i ++) {
+            if (!getDominators(units[i]).equals(new HashSet<>(finder.getDominators(units[i])))) {
+                return false;
+            }
+            if (NONE != idoms[i] && !Objects.equals(getImmediateDominator(units[i]), finder.getImmediateDominator(units[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ordinalsOf gets the ordinals of units
+    private int[] ordinalsOf(List<Unit> us) {
+        int[] ret = new int[us.size()];
+        int   l   = 0;
+        for (Unit u : us) {
+            Integer i = ordinals.get(u);
+            if (null != i) { ret[l ++] = i; }
+        }
+        return l == ret.length ? ret : Arrays.copyOf(ret, l);
+    }
+
+    // reversePostOrder puts nodes reachable from root into order in reverse post order,
+    // and saves the post order number of each node in postOrder, returns number of reachable nodes
+    private static int reversePostOrder(int root, int[][] succs, int[] order, int[] postOrder) {
+        int       n       = succs.length;
+        boolean[] visited = new boolean[n];
+        int[]     stack   = new int[n];
+        int[]     cursors = new int[n];
+        int       top     = 0;
+        int       number  = 0;
+
+        Arrays.fill(postOrder, NONE);
+        stack[top ++] = root;
+        visited[root] = true;
+        while (top > 0) {
+            int b = stack[top - 1];
+            if (cursors[b] < succs[b].length) {
+                int s = succs[b][cursors[b] ++];
+                if (!visited[s]) {
+                    visited[s] = true;
+                    stack[top ++] = s;
+                }
+            } else {
+                top --;
+                postOrder[b] = number ++;
+            }
+        }
+
+        // reverse post order, the root comes first
+        for (int b = 0; b < n; b ++) {
+            if (NONE != postOrder[b]) {
+                order[number - 1 - postOrder[b]] = b;
+            }
+        }
+
+        return number;
+    }
+
+    // intersect finds the nearest common dominator of b1 and b2
+    private static int intersect(int b1, int b2, int[] doms, int[] postOrder) {
+        while (b1 != b2) {
+            while (postOrder[b1] < postOrder[b2]) { b1 = doms[b1]; }
+            while (postOrder[b2] < postOrder[b1]) { b2 = doms[b2]; }
+        }
+        return b1;
+    }
+}
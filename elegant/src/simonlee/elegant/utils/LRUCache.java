@@ -0,0 +1,159 @@
+package simonlee.elegant.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * LRUCache is a thread-safe least-recently-used cache, whose memory is bounded by the total weight
+ * of its values rather than the number of them. Once the total weight exceeds the capacity, the least
+ * recently used values are evicted. Each value is loaded at most once at a time, concurrent requests of a
+ * value being loaded wait for it. It counts hits, misses and evictions, to see how much is reused.
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public class LRUCache<K, V> {
+
+    private final long                capacity;
+    private final ToIntFunction<V>    weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long                      weight  = 0;
+    // values being loaded, so that concurrent requests of the same key share one load
+    private final Map<K, CompletableFuture<V>> loading = new HashMap<>();
+
+    private final AtomicLong hits      = new AtomicLong(0);
+    private final AtomicLong misses    = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * @param capacity the max total weight of all values
+     * @param weigher  computes weight of a value
+     */
+    public LRUCache(long capacity, ToIntFunction<V> weigher) {
+        this.capacity = capacity;
+        this.weigher  = weigher;
+    }
+
+    /**
+     * get gets the value of key, and computes it using loader if it is absent, the loader is invoked
+     * outside the lock, so that it can use this cache recursively for other keys, and only once at a time
+     * for each key, i.e. threads requesting a key that is being loaded wait for that load
+     *
+     * @param key    the key
+     * @param loader computes the value of key
+     * @return       the value of key
+     */
+    public V get(K key, Function<K, V> loader) {
+        CompletableFuture<V> load;
+        synchronized (this) {
+            V v = entries.get(key);
+            if (null != v) {
+                hits.incrementAndGet();
+                return v;
+            }
+
+            load = loading.get(key);
+            if (null == load) {
+                loading.put(key, new CompletableFuture<>());
+            }
+        }
+
+        // some other thread is loading it, wait for its result
+        if (null != load) {
+            hits.incrementAndGet();
+            try {
+                return load.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) { throw (Error) e.getCause(); }
+                throw (RuntimeException) e.getCause();
+            }
+        }
+
+        misses.incrementAndGet();
+        V v = null;
+        Throwable failure = null;
+        try {
+            v = loader.apply(key);
+            return v;
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            synchronized (this) {
+                if (null != v) {
+                    put(key, v);
+                }
+                load = loading.remove(key);
+            }
+            if (null == failure) {
+                load.complete(v);
+            } else {
+                load.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * put puts the value of key, and evicts the least recently used ones if necessary
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public synchronized void put(K key, V value) {
+        V old = entries.put(key, value);
+        if (null != old) {
+            weight -= weigher.applyAsInt(old);
+        }
+        weight += weigher.applyAsInt(value);
+
+        // always keep the newest one
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+        while (weight > capacity && entries.size() > 1 && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            if (eldest.getKey().equals(key)) { continue; }
+            weight -= weigher.applyAsInt(eldest.getValue());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * clear clears all values, counters are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses, %d evictions, %d entries", getHits(), getMisses(), getEvictions(), size());
+    }
+}
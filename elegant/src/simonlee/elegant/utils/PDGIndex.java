@@ -0,0 +1,100 @@
+package simonlee.elegant.utils;
+
+import simonlee.elegant.environ.Environ;
+import soot.SootMethod;
+import soot.Unit;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.pdg.HashMutablePDG;
+import soot.toolkits.graph.pdg.PDGNode;
+import soot.toolkits.graph.pdg.ProgramDependenceGraph;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * PDGIndex is the program dependence graph of a method, with a direct index from each unit to
+ * the PDG node where it lives at. PDG construction is expensive, so it is built by one thread at a time
+ * and cached for the whole run, bounded by the number of units indexed, and methods whose PDG can not be
+ * built are cached as well.
+ */
+public class PDGIndex {
+
+    // pdgIndexCache, as a cache, stores the PDG index of each method, or NONE if it can not be built
+    private static LRUCache<SootMethod, PDGIndex> pdgIndexCache =
+            new LRUCache<>(Environ.ENV_PDG_CACHE_CAPACITY, PDGIndex::weight);
+    // NONE marks methods whose PDG can not be built
+    private static final PDGIndex NONE = new PDGIndex();
+
+    // the program dependence graph
+    private ProgramDependenceGraph pdg;
+    // nodes of units, i.e. the PDG node where the unit lives at
+    private Map<Unit, PDGNode> nodes = new HashMap<>();
+
+    // PDGIndex creates NONE, which has neither a pdg nor nodes
+    private PDGIndex() {}
+
+    private PDGIndex(SootMethod m) {
+        pdg = new HashMutablePDG(new BriefUnitGraph(m.getActiveBody()));
+
+        // index nodes in the order of the pdg, a unit is indexed to the first node that contains it,
+        // which is exactly what Soots.findNodeOf finds
+        for (PDGNode n : pdg) {
+            Iterator<Unit> iterator = Soots.unitIteratorOfPDGNode(n);
+            if (iterator == null) continue;
+
+            while (iterator.hasNext()) {
+                nodes.putIfAbsent(iterator.next(), n);
+            }
+        }
+    }
+
+    /**
+     * of gets the PDG index of method m, and builds it if it is not built yet or it is released
+     *
+     * @param m the method
+     * @return  the PDG index of m, or null if it can not be built, e.g. m has no body
+     */
+    public static PDGIndex of(SootMethod m) {
+        if (null == m) { return null; }
+
+        PDGIndex index = pdgIndexCache.get(m, k -> {
+            try {
+                return new PDGIndex(k);
+            } catch (Exception e) {
+                // do nothing, some method may have no body, and a RuntimeException will be thrown
+                return NONE;
+            }
+        });
+
+        return NONE == index ? null : index;
+    }
+
+    /**
+     * getPDGIndexCache gets the cache of PDG indexes, to see how much work is reused
+     *
+     * @return the cache of PDG indexes
+     */
+    public static LRUCache<?, ?> getPDGIndexCache() {
+        return pdgIndexCache;
+    }
+
+    // weight is the number of units indexed, at least 1 so that NONE is counted as well
+    private int weight() {
+        return Math.max(1, nodes.size());
+    }
+
+    public ProgramDependenceGraph getPDG() {
+        return pdg;
+    }
+
+    /**
+     * getNodeOf gets the PDG node where unit u lives at
+     *
+     * @param u the unit
+     * @return  the PDG node of u, or null if u is not in the pdg
+     */
+    public PDGNode getNodeOf(Unit u) {
+        return nodes.get(u);
+    }
+}
@@ -0,0 +1,238 @@
+package simonlee.elegant.utils;
+
+import simonlee.elegant.d3algo.AbstractD3Algo;
+import simonlee.elegant.finder.CallSites;
+import soot.Body;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.Stmt;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.util.Chain;
+
+import java.util.*;
+
+/**
+ * ReverseCallIndex maps a callee to all its (caller, call site) pairs. It merges the edges of
+ * the (incomplete) call graph built in soot and the invoking statements found syntactically
+ * in all bodies, and is built in a single pass.
+ *
+ * To keep it small for large apps, methods and units are numbered, the caller of each unit
+ * is kept in an array indexed by the unit number, and call sites are laid out CSR-style:
+ *
+ *   callSites[offsets[callee] .. offsets[callee + 1]) are the call sites of callee
+ *
+ * so that a lookup costs about the number of call sites of the callee.
+ */
+public class ReverseCallIndex {
+
+    // methods numbered, methods.get(methodIds.get(m)) == m
+    private Map<SootMethod, Integer> methodIds = new HashMap<>();
+    private List<SootMethod>         methods   = new ArrayList<>();
+
+    // units numbered, units.get(unitIds.get(u)) == u
+    private Map<Unit, Integer> unitIds = new HashMap<>();
+    private List<Unit>         units   = new ArrayList<>();
+
+    // unitCallers[u] is the method where unit u lives at
+    private int[] unitCallers;
+
+    // CSR layout of call sites, indexed by the callee number
+    private int[] offsets;
+    private int[] callSites;
+
+    private ReverseCallIndex() { }
+
+    /**
+     * build builds the index of all call sites in cg and classes, those in 3rd party libraries are excluded
+     *
+     * @param cg      the call graph needed traversing
+     * @param classes the classes needed traversing
+     * @param d3Algo  the d3 algo
+     * @return        the reverse call index
+     */
+    public static ReverseCallIndex build(CallGraph cg, Chain<SootClass> classes, AbstractD3Algo d3Algo) {
+        ReverseCallIndex index   = new ReverseCallIndex();
+        IntList          callees = new IntList();
+        IntList          sites   = new IntList();
+        IntList          callers = new IntList();
+
+        // firstly we get all call sites from the incomplete call graph built in soot
+        for (Edge edge : cg) {
+            SootMethod caller   = edge.src();
+            SootMethod callee   = edge.tgt();
+            Unit       callSite = edge.srcUnit();
+
+            if (null == caller || null == caller.getDeclaringClass() || null == callee || null == callSite ||
+                    d3Algo.is3rdPartyLibMethod(caller)) {
+                continue;
+            }
+
+            callees.add(index.numberOf(callee));
+            sites.add(index.numberOf(callSite, caller, callers));
+        }
+
+        // then we traverse each soot method's body, and add all invoking statements
+        for (SootClass c : classes) {
+            if (d3Algo.is3rdPartyLibClass(c)) { continue; }
+
+            for (SootMethod m : c.getMethods()) {
+                Body body;
+                try {
+                    body = m.getActiveBody();
+                } catch (Exception e) {
+                    // do nothing, some method may have no body, and a RuntimeException will be thrown
+                    continue;
+                }
+
+                for (Unit u : body.getUnits()) {
+                    if (!(u instanceof Stmt) || !((Stmt) u).containsInvokeExpr()) { continue; }
+
+                    SootMethod callee;
+                    try {
+                        callee = ((Stmt) u).getInvokeExpr().getMethod();
+                    } catch (Exception e) {
+                        // do nothing, the callee may be unresolvable
+                        continue;
+                    }
+
+                    callees.add(index.numberOf(callee));
+                    sites.add(index.numberOf(u, m, callers));
+                }
+            }
+        }
+
+        index.unitCallers = callers.toArray();
+        index.layout(callees, sites);
+
+        return index;
+    }
+
+    /**
+     * getCallSites gets call sites of callee, clarified by their callers
+     *
+     * @param callee the callee who wants to find its call sites
+     * @return       the call sites of callee
+     */
+    public Map<SootMethod, CallSites> getCallSites(SootMethod callee) {
+        Integer id = methodIds.get(callee);
+        if (null == id) { return new HashMap<>(1); }
+
+        int                        from    = offsets[id];
+        int                        to      = offsets[id + 1];
+        Map<SootMethod, CallSites> callers = new HashMap<>(Math.max(1, to - from));
+
+        for (int i = from; i < to; i ++) {
+            Unit       callSite = units.get(callSites[i]);
+            SootMethod caller   = methods.get(unitCallers[callSites[i]]);
+
+            CallSites cs = callers.get(caller);
+            if (null == cs) {
+                callers.put(caller, new CallSites(callee, caller, callSite));
+            } else {
+                cs.addCallSite(callSite);
+            }
+        }
+
+        return callers;
+    }
+
+    /**
+     * getCallSitesCount gets the number of indexed call sites
+     *
+     * @return the number of call sites
+     */
+    public int getCallSitesCount() {
+        return callSites.length;
+    }
+
+    // numberOf numbers method m
+    private int numberOf(SootMethod m) {
+        Integer id = methodIds.get(m);
+        if (null == id) {
+            id = methods.size();
+            methodIds.put(m, id);
+            methods.add(m);
+        }
+        return id;
+    }
+
+    // numberOf numbers unit u, which lives at method m, the caller of u is saved in callers
+    private int numberOf(Unit u, SootMethod m, IntList callers) {
+        Integer id = unitIds.get(u);
+        if (null == id) {
+            id = units.size();
+            unitIds.put(u, id);
+            units.add(u);
+            callers.add(numberOf(m));
+        }
+        return id;
+    }
+
+    // layout lays (callee, call site) pairs out in CSR style, duplicated pairs are removed
+    private void layout(IntList callees, IntList sites) {
+        int n = methods.size();
+
+        // count call sites of each callee, and compute offsets
+        int[] counts = new int[n + 1];
+        for (int i = 0; i < callees.size(); i ++) {
+            counts[callees.get(i) + 1] ++;
+        }
+        for (int i = 0; i < n; i ++) {
+            counts[i + 1] += counts[i];
+        }
+
+        // place each call site into its callee's bucket
+        int[] buckets = new int[sites.size()];
+        int[] cursors = Arrays.copyOf(counts, n);
+        for (int i = 0; i < callees.size(); i ++) {
+            buckets[cursors[callees.get(i)] ++] = sites.get(i);
+        }
+
+        // sort each bucket, remove duplicates and compact them
+        offsets = new int[n + 1];
+        int size = 0;
+        for (int c = 0; c < n; c ++) {
+            int from = counts[c];
+            int to   = counts[c + 1];
+
+            Arrays.sort(buckets, from, to);
+            offsets[c] = size;
+            for (int i = from; i < to; i ++) {
+                if (i == from || buckets[i] != buckets[i - 1]) {
+                    buckets[size ++] = buckets[i];
+                }
+            }
+        }
+        offsets[n] = size;
+
+        callSites = Arrays.copyOf(buckets, size);
+    }
+
+    // IntList is a growable list of primitive ints
+    private static class IntList {
+
+        private int[] data = new int[1024];
+        private int   size = 0;
+
+        void add(int v) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size << 1);
+            }
+            data[size ++] = v;
+        }
+
+        int get(int i) {
+            return data[i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -3,14 +3,13 @@ package simonlee.elegant.utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import simonlee.elegant.d3algo.AbstractD3Algo;
+import simonlee.elegant.environ.Environ;
 import simonlee.elegant.finder.CallSites;
 import soot.*;
 import soot.jimple.*;
 import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
 import soot.jimple.toolkits.callgraph.CallGraph;
-import soot.jimple.toolkits.callgraph.Edge;
 import soot.toolkits.graph.*;
-import soot.toolkits.graph.pdg.HashMutablePDG;
 import soot.toolkits.graph.pdg.IRegion;
 import soot.toolkits.graph.pdg.PDGNode;
 import soot.toolkits.graph.pdg.ProgramDependenceGraph;
@@ -25,9 +24,46 @@ public class Soots {
     private static final String CLASS_STATIC_CODE_BLOCK_METHOD_NAME = "<clinit>";
     private static final String CLASS_CODE_BLOCK_METHOD_NAME        = "<init>";
 
-    // invokingStmtsCache, as a cache, stores all statements that will invoke a method
-    // the key is the method where the statement is
-    private static Map<SootMethod, Set<Unit>> invokingStmtsCache = new HashMap<>(256);
+    // reverseCallIndex, as a cache, stores all call sites of each callee,
+    // it is built only once the first time call sites are needed
+    private static volatile ReverseCallIndex reverseCallIndex = null;
+
+    // SlicingKey is the key of slicing caches, i.e. (unit, method), only slices without exclusions are cached
+    private static final class SlicingKey {
+
+        private final Unit       u;
+        private final SootMethod m;
+
+        SlicingKey(Unit u, SootMethod m) {
+            this.u = u;
+            this.m = m;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(u, m);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SlicingKey)) {
+                return false;
+            }
+
+            SlicingKey k = (SlicingKey) obj;
+
+            return Objects.equals(u, k.u) && Objects.equals(m, k.m);
+        }
+    }
+
+    // backwardSlicingCache, as a cache, stores the backward slicing of each (unit, method) for the whole run,
+    // different apis often share callers, thus their call sites are sliced again and again, an empty slicing
+    // weighs 1 as well, so that it is bounded too
+    private static LRUCache<SlicingKey, Set<Unit>> backwardSlicingCache =
+            new LRUCache<>(Environ.ENV_SLICING_CACHE_CAPACITY, s -> Math.max(1, s.size()));
+    // dataDependenciesCache, as a cache, stores the data-flow dependencies of each (unit, method)
+    private static LRUCache<SlicingKey, Set<Unit>> dataDependenciesCache =
+            new LRUCache<>(Environ.ENV_SLICING_CACHE_CAPACITY, s -> Math.max(1, s.size()));
 
     /**
      * findLatestDefinition will find the latest definition unit of value v at unit u in method m
@@ -41,27 +77,8 @@ public class Soots {
         if (null == v || null == u || null == m) { return null; }
         if (!(u instanceof Stmt)) { return null; }
 
-        Unit       def   = null;
-        List<Unit> units = new ArrayList<>(m.getActiveBody().getUnits());
-        int        index = units.indexOf(u);
-
-        if (index != -1) {
-            for (int i = index - 1; i >= 0; i --) {
-                Stmt s = (Stmt) units.get(i);
-                if (s instanceof IdentityStmt || s instanceof AssignStmt) {
-                    try {
-                        if (v.equals(s.getDefBoxes().get(0).getValue())) {
-                            def = s;
-                            break;
-                        }
-                    } catch (NullPointerException e) {
-                        // do nothing
-                    }
-                }
-            }
-        }
-
-        return def;
+        DefUseIndex index = DefUseIndex.of(m);
+        return null == index ? null : index.findLatestDefinition(v, u);
     }
 
     /**
@@ -76,30 +93,8 @@ public class Soots {
         if (null == v || null == u || null == m) { return null; }
         if (!(u instanceof Stmt)) { return new HashSet<>(); }
 
-        try {
-            Set<Unit>  defs  = new HashSet<>();
-            List<Unit> units = new ArrayList<>(m.getActiveBody().getUnits());
-            int        index = units.indexOf(u);
-
-            if (index != -1) {
-                for (int i = index - 1; i >= 0; i --) {
-                    Stmt s = (Stmt) units.get(i);
-                    if (s instanceof IdentityStmt || s instanceof AssignStmt) {
-                        try {
-                            if (v.equals(s.getDefBoxes().get(0).getValue())) {
-                                defs.add(s);
-                            }
-                        } catch (NullPointerException e) {
-                            // do nothing
-                        }
-                    }
-                }
-            }
-
-            return defs;
-        } catch (Exception e) {
-            return new HashSet<>();
-        }
+        DefUseIndex index = DefUseIndex.of(m);
+        return null == index ? new HashSet<>() : index.findPreviousDefinitions(v, u);
     }
 
     /**
@@ -162,19 +157,22 @@ public class Soots {
      * @return    the set of backward slicing in the pdg of the unit
      */
     public static Set<Unit> findInternalBackwardSlicing(Unit u, ProgramDependenceGraph pdg) {
-        Set<Unit> internalBackwardSlicing = new HashSet<>(128);
-
-        PDGNode srcNode = findNodeOf(u, pdg);
-        List<PDGNode> nodes = srcNode.getBackDependets();
+        return findInternalBackwardSlicing(findNodeOf(u, pdg));
+    }
 
-        for (PDGNode n : nodes) {
-            Iterator<Unit> iter = unitIteratorOfPDGNode(n);
-            while (iter.hasNext()) {
-                internalBackwardSlicing.add(iter.next());
-            }
-        }
+    /**
+     * findInternalBackwardSlicing finds internal backward slicing units of unit u in the pdg of method m,
+     * the pdg is built at most once per method, see PDGIndex
+     *
+     * @param u the unit who wants to find its internal backward slicing
+     * @param m the method where the unit lives at
+     * @return  the set of backward slicing in the pdg of the unit
+     */
+    public static Set<Unit> findInternalBackwardSlicing(Unit u, SootMethod m) {
+        PDGIndex index = PDGIndex.of(m);
+        if (null == index) { return new HashSet<>(); }
 
-        return internalBackwardSlicing;
+        return findInternalBackwardSlicing(index.getNodeOf(u));
     }
 
     /**
@@ -188,9 +186,7 @@ public class Soots {
     public static Set<Unit> findDominators(Unit u, SootMethod m, IInfoflowCFG icfg) {
         try {
             // TODO - extends to inter-procedural, now only finds the intra- ones using the unit graph
-            DirectedGraph<Unit> graph = icfg.getOrCreateUnitGraph(m);
-            MHGDominatorsFinder<Unit> mhgDominatorsFinder = new MHGDominatorsFinder<>(graph);
-            return new HashSet<>(mhgDominatorsFinder.getDominators(u));
+            return DominatorTree.dominatorsOf(m, icfg).getDominators(u);
         } catch (Exception e) {
             return new HashSet<>();
         }
@@ -206,8 +202,7 @@ public class Soots {
      */
     public static Unit findImmediateDominator(Unit u, SootMethod m, IInfoflowCFG icfg) {
         // TODO - extends to inter-procedural, now only finds the intra- ones using the unit graph
-        return new MHGDominatorsFinder<>(icfg.getOrCreateUnitGraph(m))
-                .getImmediateDominator(u);
+        return DominatorTree.dominatorsOf(m, icfg).getImmediateDominator(u);
     }
 
     /**
@@ -220,9 +215,7 @@ public class Soots {
      */
     public static Set<Unit> findPostDominators(Unit u, SootMethod m, IInfoflowCFG icfg) {
         // TODO - extends to inter-procedural, now only finds the intra- ones using the unit graph
-        DirectedGraph<Unit> graph = icfg.getOrCreateUnitGraph(m);
-        MHGPostDominatorsFinder<Unit> mhgPostDominatorsFinder = new MHGPostDominatorsFinder<>(graph);
-        return new HashSet<>(mhgPostDominatorsFinder.getDominators(u));
+        return DominatorTree.postDominatorsOf(m, icfg).getDominators(u);
     }
 
     /**
@@ -235,12 +228,12 @@ public class Soots {
      */
     public static Unit findImmediatePostDominator(Unit u, SootMethod m, IInfoflowCFG icfg) {
         // TODO - extends to inter-procedural, now only finds the intra- ones using the unit graph
-        return new MHGPostDominatorsFinder<>(icfg.getOrCreateUnitGraph(m))
-                .getImmediateDominator(u);
+        return DominatorTree.postDominatorsOf(m, icfg).getImmediateDominator(u);
     }
 
     /**
-     * findBackwardSlicing finds all the backward slicing of a unit
+     * findBackwardSlicing finds all the backward slicing of a unit, slicing is cached for the whole run,
+     * so the returned set is unmodifiable
      *
      * @param u      the unit who wants to find its backward slicing
      * @param m      the method where the unit lives at
@@ -250,51 +243,32 @@ public class Soots {
      * @return       the backward slicing of the unit in cg and icfg
      */
     public static Set<Unit> findBackwardSlicing(Unit u, SootMethod m, CallGraph cg, IInfoflowCFG icfg, AbstractD3Algo d3Algo) {
-        Set<Unit> backwardSlicing = new HashSet<>();
-
-        // a slicing includes the data-flow dependencies and control-flow dependencies
-        // firstly we compute the data-flow dependencies using the call graph
-        // secondly we compute the control-flow dependencies using the inter-procedural control flow graph
-
-        // 1. data-flow dependencies
-        Set<Unit> backwardDataBackwardDependencies = findBackwardDataDependencies(u, m, cg, d3Algo);
-        backwardSlicing.addAll(backwardDataBackwardDependencies);
-
-        // 2. control-flow dependencies
-        Set<Unit> dominators = findDominators(u, m, icfg);
-        for (Unit d : dominators) {
-            if (!backwardSlicing.contains(d)) {
-                // find data-flow dependencies of this dominator
-                backwardSlicing.addAll(findBackwardDataDependencies(d, icfg.getMethodOf(d), cg, d3Algo));
-            }
-        }
-        backwardSlicing.addAll(dominators);
-
-        // 3. we use the built-in backward slicing to get the intra-procedural backward slicing
-        try {
-            Set<Unit> builtInBackwardSlicing = findInternalBackwardSlicing(u,
-                    new HashMutablePDG(new BriefUnitGraph(m.getActiveBody())));
-            backwardSlicing.addAll(builtInBackwardSlicing);
-        } catch (Exception e) {
-            // do nothing here
-        }
+        return backwardSlicingCache.get(new SlicingKey(u, m),
+                k -> Collections.unmodifiableSet(doFindBackwardSlicing(u, m, cg, icfg, d3Algo)));
+    }
 
-        // 4. TRICK here: we add all IfStmt before u and its corresponding definitions into slicing,
-        //    because most developers will use this method
-        try {
-            Set<Unit> trickySlicing = findTrickySlicing(u, m);
-            backwardSlicing.addAll(trickySlicing);
-        } catch (Exception e) {
-            // do nothing
-        }
+    /**
+     * getBackwardSlicingCache gets the cache of backward slicing, to see how much work is reused
+     *
+     * @return the cache of backward slicing
+     */
+    public static LRUCache<?, ?> getBackwardSlicingCache() {
+        return backwardSlicingCache;
+    }
 
-        return backwardSlicing;
+    /**
+     * getDataDependenciesCache gets the cache of data-flow dependencies, to see how much work is reused
+     *
+     * @return the cache of data-flow dependencies
+     */
+    public static LRUCache<?, ?> getDataDependenciesCache() {
+        return dataDependenciesCache;
     }
 
     /**
      * findCallSites gets the relatively complete set of call sites of a callee, given that the call graph
-     * built in soot is incomplete, but firstly, we caches the invoking statements, and then we invoke
-     * doFindCallSites to do actual finding.
+     * built in soot is incomplete, but firstly, we index all call sites of all callees in a reverse call
+     * index, and then we invoke doFindCallSites to do actual finding.
      *
      * @param callee  the callee who wants to find its call sites
      * @param cg      the call graph needed traversing
@@ -307,30 +281,8 @@ public class Soots {
             CallGraph cg,
             Chain<SootClass> classes,
             AbstractD3Algo d3Algo) {
-        // firstly, we traverse each soot method's body, caches the invoking statements
-        if (invokingStmtsCache.isEmpty()) {
-            for (SootClass c : classes) {
-                if (d3Algo.is3rdPartyLibClass(c)) { continue; }
-
-                for (SootMethod m : c.getMethods()) {
-                    try {
-                        Body body = m.getActiveBody();
-                        Chain<Unit> units = body.getUnits();
-                        for (Unit u : units) {
-                            if (!(u instanceof Stmt) || !((Stmt) u).containsInvokeExpr()) {
-                                continue;
-                            } else if (invokingStmtsCache.containsKey(m)) {
-                                invokingStmtsCache.get(m).add(u);
-                            } else {
-                                invokingStmtsCache.put(m, new HashSet<>());
-                            }
-                        }
-                    } catch (Exception e) {
-                        // do nothing, some method may have no body, and a RuntimeException will be thrown
-                    }
-                }
-            }
-        }
+        // firstly, we index all call sites of all callees
+        getReverseCallIndex(cg, classes, d3Algo);
 
         // then we get real
         return doFindCallSites(callee, cg, d3Algo);
@@ -365,50 +317,96 @@ public class Soots {
         return iterator;
     }
 
-    // doFindCallSites finds the relatively complete set of call sites of a callee, by:
+    // getReverseCallIndex gets the reverse call index, and builds it if it is not built yet,
+    // finders analyse models concurrently, so it is built under a lock
+    private static ReverseCallIndex getReverseCallIndex(
+            CallGraph cg,
+            Chain<SootClass> classes,
+            AbstractD3Algo d3Algo) {
+        ReverseCallIndex index = reverseCallIndex;
+        if (null == index) {
+            synchronized (Soots.class) {
+                if (null == (index = reverseCallIndex)) {
+                    reverseCallIndex = index = ReverseCallIndex.build(cg, classes, d3Algo);
+                }
+            }
+        }
+
+        return index;
+    }
+
+    // doFindCallSites finds the relatively complete set of call sites of a callee, by looking up the
+    // reverse call index, which merges:
     // 1. the built-in call graph
-    // 2. the classes cached in invokingStmtsCache
+    // 2. the invoking statements of all classes
     private static Map<SootMethod, CallSites> doFindCallSites(SootMethod callee, CallGraph cg, AbstractD3Algo d3Algo) {
-        Map<SootMethod, CallSites> callers = new HashMap<>(1);
-
-        // firstly we get all callers from the incomplete call graph built in soot
-        Iterator<Edge> edgeIterator = cg.edgesInto(callee);
-        while (edgeIterator.hasNext()) {
-            Edge       edge     = edgeIterator.next();
-            SootMethod caller   = edge.src();
-            Unit       callSite = edge.srcUnit();
-
-            if (null == caller || null == caller.getDeclaringClass() ||
-                    d3Algo.is3rdPartyLibMethod(caller)) {
-                continue ;
-            } else if (callers.containsKey(caller)) {
-                callers.get(caller).addCallSite(callSite);
-            } else {
-                callers.put(caller, new CallSites(callee, caller, callSite));
+        return getReverseCallIndex(cg, Scene.v().getClasses(), d3Algo).getCallSites(callee);
+    }
+
+    // findInternalBackwardSlicing finds internal backward slicing units of PDG node srcNode
+    private static Set<Unit> findInternalBackwardSlicing(PDGNode srcNode) {
+        Set<Unit> internalBackwardSlicing = new HashSet<>(128);
+
+        List<PDGNode> nodes = srcNode.getBackDependets();
+
+        for (PDGNode n : nodes) {
+            Iterator<Unit> iter = unitIteratorOfPDGNode(n);
+            while (iter.hasNext()) {
+                internalBackwardSlicing.add(iter.next());
             }
         }
 
-        // then we traverse all invoking statements, and check
-        for (Map.Entry<SootMethod, Set<Unit>> entry : invokingStmtsCache.entrySet()) {
-            for (Unit u : entry.getValue()) {
-                InvokeExpr invokeExpr = ((Stmt) u).getInvokeExpr();
-                if (callee.equals(invokeExpr.getMethod())) {
-                    if (callers.containsKey(u)) {
-                        callers.get(entry.getKey()).addCallSite(u);
-                    } else {
-                        callers.put(entry.getKey(), new CallSites(callee, entry.getKey(), u));
-                    }
-                }
+        return internalBackwardSlicing;
+    }
+
+    // doFindBackwardSlicing finds all the backward slicing of a unit without caches
+    private static Set<Unit> doFindBackwardSlicing(Unit u, SootMethod m, CallGraph cg, IInfoflowCFG icfg, AbstractD3Algo d3Algo) {
+        Set<Unit> backwardSlicing = new HashSet<>();
+
+        // a slicing includes the data-flow dependencies and control-flow dependencies
+        // firstly we compute the data-flow dependencies using the call graph
+        // secondly we compute the control-flow dependencies using the inter-procedural control flow graph
+
+        // 1. data-flow dependencies
+        Set<Unit> backwardDataBackwardDependencies = findBackwardDataDependencies(u, m, cg, d3Algo);
+        backwardSlicing.addAll(backwardDataBackwardDependencies);
+
+        // 2. control-flow dependencies
+        Set<Unit> dominators = findDominators(u, m, icfg);
+        for (Unit d : dominators) {
+            if (!backwardSlicing.contains(d)) {
+                // find data-flow dependencies of this dominator
+                backwardSlicing.addAll(findBackwardDataDependencies(d, icfg.getMethodOf(d), cg, d3Algo));
             }
         }
+        backwardSlicing.addAll(dominators);
 
-        return callers;
+        // 3. we use the built-in backward slicing to get the intra-procedural backward slicing
+        try {
+            Set<Unit> builtInBackwardSlicing = findInternalBackwardSlicing(u, m);
+            backwardSlicing.addAll(builtInBackwardSlicing);
+        } catch (Exception e) {
+            // do nothing here
+        }
+
+        // 4. TRICK here: we add all IfStmt before u and its corresponding definitions into slicing,
+        //    because most developers will use this method
+        try {
+            Set<Unit> trickySlicing = findTrickySlicing(u, m);
+            backwardSlicing.addAll(trickySlicing);
+        } catch (Exception e) {
+            // do nothing
+        }
+
+        return backwardSlicing;
     }
 
-    // findBackwardDataDependencies finds the data-flow dependencies of u located at m in the call graph
+    // findBackwardDataDependencies finds the data-flow dependencies of u located at m in the call graph,
+    // dominators are shared by call sites, so the data-flow dependencies are cached, don't modify them
     private static Set<Unit> findBackwardDataDependencies(Unit u, SootMethod m, CallGraph cg, AbstractD3Algo d3Algo) {
-        Set<Value>      exValues        = new HashSet<>();
-        return findBackwardDataDependenciesExcept(null, u, m, cg, exValues, d3Algo);
+        Set<Value>      exValues        = Collections.emptySet();
+        return dataDependenciesCache.get(new SlicingKey(u, m),
+                k -> findBackwardDataDependenciesExcept(null, u, m, cg, exValues, d3Algo));
     }
 
     // findBackwardDataDependenciesExcept finds the data-flow dependencies of u located at m in the call graph,
@@ -493,24 +491,18 @@ public class Soots {
 
     // findTrickySlicing finds the slicing that is not easy by a comman way, i.e. by a tricky way
     private static Set<Unit> findTrickySlicing(Unit u, SootMethod m) {
-        Set<Unit> ret  = new HashSet<>();
-        Body      body = null;
-
-        try { body = m.getActiveBody(); } catch (Exception e) { return ret; }
+        Set<Unit>   ret   = new HashSet<>();
+        DefUseIndex index = DefUseIndex.of(m);
 
-        List<Unit> units = new ArrayList<>(body.getUnits());
-        int        uIdx  = units.indexOf(u);
-        for (int i = 0; i < uIdx; i ++) {
-            Unit uu = units.get(i);
-            if (null == uu || !(uu instanceof IfStmt)) { continue; }
-            else { ret.add(uu); }
+        if (null == index) { return ret; }
 
-            IfStmt ifStmt = (IfStmt) uu;
+        for (IfStmt ifStmt : index.findIfStmtsBefore(u)) {
+            ret.add(ifStmt);
 
             try {
                 Value leftV = ifStmt.getCondition().getUseBoxes().get(0).getValue();
                 if (leftV instanceof Local) {
-                    ret.add(findLatestDefinition(leftV, uu, m));
+                    ret.add(index.findLatestDefinition(leftV, ifStmt));
                 }
             } catch (Exception e) {
                 // do nothing
@@ -519,7 +511,7 @@ public class Soots {
             try {
                 Value rightV = ifStmt.getCondition().getUseBoxes().get(1).getValue();
                 if (rightV instanceof Local) {
-                    ret.add(findLatestDefinition(rightV, uu, m));
+                    ret.add(index.findLatestDefinition(rightV, ifStmt));
                 }
             } catch (Exception e) {
                 // do nothing